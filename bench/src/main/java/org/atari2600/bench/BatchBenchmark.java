@@ -0,0 +1,86 @@
+package org.atari2600.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.atari2600.batch.Batch;
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.tv.TVStandard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Frames per second of a whole batch, against as many single machines run
+ * one after the other on the same thread. Multiply by the number of lanes for
+ * the frames of every instance. Frames are not rendered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+	@Param({ "boing26.bin", "kernel_15.bin", "fullscrn.bin" })
+	public String rom;
+
+	@Param({ "1", "8", "64" })
+	public int lanes;
+
+	@Param({ "true", "false" })
+	public boolean batched;
+
+	private Batch batch;
+	private Atari2600[] single;
+
+	@Setup
+	public void setup() {
+		String dir = System.getProperty("atari.roms", "roms");
+		Cartridge cart = new Cartridge(dir + "/" + rom);
+
+		if (batched) {
+			batch = new Batch(cart, lanes, TVStandard.NTSC);
+			batch.boot();
+
+			// Get past the boot code.
+			for (int i = 0; i < 60; i++) {
+				batch.runFrame(false);
+			}
+		} else {
+			single = new Atari2600[lanes];
+
+			for (int l = 0; l < lanes; l++) {
+				single[l] = new Atari2600(cart, null);
+				single[l].getCpu().boot();
+
+				for (int i = 0; i < 60; i++) {
+					single[l].runFrame(false);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public long runFrame() {
+		if (batched) {
+			batch.runFrame(false);
+
+			return batch.getCycles(0);
+		}
+
+		for (int l = 0; l < lanes; l++) {
+			single[l].runFrame(false);
+		}
+
+		return single[0].getCycles();
+	}
+}
@@ -0,0 +1,107 @@
+package org.atari2600.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.core.Cpu;
+import org.atari2600.core.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Instructions per second of the CPU alone (the TIA and the timer are not
+ * clocked), running small loops that stand for different kinds of code. The
+ * score is in instructions per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuBenchmark {
+	private static final int INSTRUCTIONS = 1000;
+
+	// Each program is a loop at $F000.
+	private static final int[] ALU = {
+			0xA9, 0x12, // LDA #$12
+			0x69, 0x34, // ADC #$34
+			0x29, 0x0F, // AND #$0F
+			0x09, 0xF0, // ORA #$F0
+			0x49, 0xAA, // EOR #$AA
+			0x0A, // ASL A
+			0xAA, // TAX
+			0xE8, // INX
+			0x88, // DEY
+			0x98, // TYA
+			0x4C, 0x00, 0xF0 // JMP $F000
+	};
+
+	private static final int[] MEMORY = {
+			0xA5, 0x80, // LDA $80
+			0x85, 0x81, // STA $81
+			0xA6, 0x81, // LDX $81
+			0x86, 0x82, // STX $82
+			0xE6, 0x83, // INC $83
+			0xB5, 0x80, // LDA $80,X
+			0xBD, 0x00, 0xF0, // LDA $F000,X
+			0x95, 0x84, // STA $84,X
+			0x4C, 0x00, 0xF0 // JMP $F000
+	};
+
+	private static final int[] BRANCH = {
+			0xCA, // DEX
+			0xD0, 0xFD, // BNE $F000
+			0xC8, // INY
+			0x4C, 0x00, 0xF0 // JMP $F000
+	};
+
+	@Param({ "alu", "memory", "branch" })
+	public String mix;
+
+	private Cpu cpu;
+	private Memory memory;
+
+	@Setup
+	public void setup() {
+		Cartridge cart = new Cartridge();
+		int[] program = mix.equals("alu") ? ALU
+				: mix.equals("memory") ? MEMORY : BRANCH;
+
+		System.arraycopy(program, 0, cart.mem, 0, program.length);
+
+		// Reset vector: $F000.
+		cart.mem[0x7FC] = 0x00;
+		cart.mem[0x7FD] = 0xF0;
+
+		Atari2600 atari = new Atari2600(cart, null);
+
+		cpu = atari.getCpu();
+		memory = cpu.getMemory();
+		cpu.boot();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INSTRUCTIONS)
+	public int execute() {
+		int cycles = 0;
+
+		for (int i = 0; i < INSTRUCTIONS; i++) {
+			cycles += cpu.executeNext();
+			memory.commit();
+		}
+
+		return cycles;
+	}
+}
@@ -0,0 +1,61 @@
+package org.atari2600.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole frames per second for each bundled ROM, with and without rendering.
+ * The ROMs are read from the directory in the atari.roms property (roms by
+ * default, relative to the working directory).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+	@Param({ "Background_Scrolling.bin", "Basic_Background.bin",
+			"Left_Scrolling.bin", "asymmetrical.bin", "asymmetrical2.bin",
+			"boing26.bin", "fullscrn.bin", "heart_color.bin", "kernel_13.bin",
+			"kernel_15.bin", "mirrored.bin", "symmetrical.bin" })
+	public String rom;
+
+	@Param({ "true", "false" })
+	public boolean render;
+
+	private Atari2600 atari;
+
+	@Setup
+	public void setup() {
+		String dir = System.getProperty("atari.roms", "roms");
+
+		atari = new Atari2600(new Cartridge(dir + "/" + rom), null);
+		atari.getCpu().boot();
+
+		// Get past the boot code.
+		for (int i = 0; i < 60; i++) {
+			atari.runFrame(true);
+		}
+	}
+
+	@Benchmark
+	public long runFrame() {
+		atari.runFrame(render);
+
+		return atari.getCycles();
+	}
+}
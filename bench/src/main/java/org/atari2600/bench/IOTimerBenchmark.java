@@ -0,0 +1,75 @@
+package org.atari2600.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.atari2600.core.IOTimer;
+import org.atari2600.util.M;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU cycles per second through IOTimer.updateTimer, fed a scanline (76
+ * cycles) at a time as the emulator does after each instruction, for each
+ * timer interval. The timer is set again before every 100 lines so it keeps
+ * running. The score is in cycles per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IOTimerBenchmark {
+	private static final int LINE = 76;
+	private static final int LINES = 100;
+
+	@Param({ "1", "8", "64", "1024" })
+	public int interval;
+
+	private IOTimer io;
+	private int timer;
+
+	@Setup
+	public void setup() {
+		io = new IOTimer();
+
+		switch (interval) {
+		case 1:
+			timer = M.TIM1T;
+			break;
+
+		case 8:
+			timer = M.TIM8T;
+			break;
+
+		case 64:
+			timer = M.TIM64T;
+			break;
+
+		default:
+			timer = M.TIM1024T;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINE * LINES)
+	public int updateTimer() {
+		io.write(timer, LINES);
+
+		for (int i = 0; i < LINES; i++) {
+			io.updateTimer(LINE);
+		}
+
+		return io.read(M.INTIM);
+	}
+}
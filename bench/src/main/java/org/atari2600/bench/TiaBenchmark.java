@@ -0,0 +1,92 @@
+package org.atari2600.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.core.Tia;
+import org.atari2600.util.M;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Color clocks per second of the TIA alone, with the registers set once for
+ * different kinds of picture. The score is in color clocks per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TiaBenchmark {
+	// A scanline.
+	private static final int CLOCKS = 228;
+
+	@Param({ "background", "playfield", "reflected", "score", "ball",
+			"objects" })
+	public String config;
+
+	@Param({ "true", "false" })
+	public boolean render;
+
+	private Tia tia;
+
+	@Setup
+	public void setup() {
+		Atari2600 atari = new Atari2600(new Cartridge(), null);
+
+		tia = atari.getCpu().getMemory().getTia();
+		tia.setRender(render);
+
+		tia.write(M.COLUBK, 0x84);
+		tia.write(M.COLUPF, 0x1C);
+		tia.write(M.COLUP0, 0x46);
+
+		if (!config.equals("background")) {
+			tia.write(M.PF0, 0xA0);
+			tia.write(M.PF1, 0x5A);
+			tia.write(M.PF2, 0xC3);
+		}
+
+		switch (config) {
+		case "reflected":
+			tia.write(M.CTRLPF, M.PLAYFIELD_REFLECTION);
+			break;
+
+		case "score":
+			tia.write(M.CTRLPF, M.PLAYFIELD_COLOR);
+			break;
+
+		case "ball":
+			tia.write(M.CTRLPF, M.PLAYFIELD_BALL_PRIORITY | M.BALL_SIZE);
+			tia.write(M.ENABL, 0x02);
+			break;
+
+		case "objects":
+			tia.write(M.NUSIZ0, 0x03);
+			tia.write(M.GRP0, 0xAA);
+			tia.write(M.ENAM0, 0x02);
+			tia.write(M.ENABL, 0x02);
+			break;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CLOCKS)
+	public void executeLine() {
+		for (int i = 0; i < CLOCKS; i++) {
+			tia.executeNext();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.atari2600.audio;
+
+/**
+ * Band-limited resampler converting TIA samples (levels from 0 to 30, about
+ * 31.4 kHz) to 16 bit PCM at the sound card rate. It uses a polyphase
+ * windowed-sinc filter: the filter kernel is precomputed for a fixed number of
+ * fractional positions, so each output sample is a single dot product.
+ */
+public class Resampler {
+	// Taps per phase and number of fractional positions of the kernel.
+	private static final int TAPS = 16;
+	private static final int PHASES = 256;
+
+	// Level to 16 bit PCM. Leaves some headroom for the filter ringing.
+	private static final float GAIN = 900f;
+
+	private final float[] kernel;
+
+	// Last TAPS input samples, stored twice so the window is always
+	// contiguous.
+	private final float[] history;
+	private int historyPos;
+
+	// Input samples consumed per output sample, and the position between two
+	// input samples.
+	private final double step;
+	private double frac;
+
+	/**
+	 * @param inRate
+	 *            : The input (TIA) sample rate.
+	 * @param outRate
+	 *            : The output sample rate.
+	 */
+	public Resampler(double inRate, double outRate) {
+		kernel = new float[PHASES * TAPS];
+		history = new float[TAPS * 2];
+		historyPos = 0;
+
+		step = inRate / outRate;
+		frac = 0;
+
+		// When downsampling the cutoff must drop to the output Nyquist
+		// frequency; when upsampling the input Nyquist frequency is the limit.
+		double cutoff = Math.min(1.0, outRate / inRate) * 0.9;
+
+		for (int p = 0; p < PHASES; p++) {
+			double sum = 0;
+
+			for (int t = 0; t < TAPS; t++) {
+				// Distance from the tap to the interpolated position.
+				double x = (t - (TAPS / 2 - 1)) - (double) p / PHASES;
+				double sinc = (x == 0) ? 1.0 : Math.sin(Math.PI * x * cutoff)
+						/ (Math.PI * x * cutoff);
+				// Blackman window over the whole kernel.
+				double w = (x + TAPS / 2.0) / TAPS;
+				double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * w) + 0.08
+						* Math.cos(4 * Math.PI * w);
+
+				kernel[p * TAPS + t] = (float) (sinc * window);
+				sum += sinc * window;
+			}
+
+			// Normalize so every phase has unity gain.
+			for (int t = 0; t < TAPS; t++) {
+				kernel[p * TAPS + t] /= sum;
+			}
+		}
+	}
+
+	/**
+	 * Resamples a block of TIA samples.
+	 *
+	 * @param in
+	 *            : The input samples.
+	 * @param len
+	 *            : The number of input samples.
+	 * @param out
+	 *            : The output buffer. Must have room for at least
+	 *            {@link #maxOutput(int)} samples.
+	 * @return The number of output samples produced.
+	 */
+	public int process(byte[] in, int len, short[] out) {
+		int n = 0;
+
+		for (int i = 0; i < len; i++) {
+			float s = in[i] * GAIN;
+
+			history[historyPos] = s;
+			history[historyPos + TAPS] = s;
+			historyPos = (historyPos + 1) % TAPS;
+
+			while (frac < 1.0) {
+				out[n++] = filter(frac);
+				frac += step;
+			}
+
+			frac -= 1.0;
+		}
+
+		return n;
+	}
+
+	/**
+	 * Computes an output sample at the given fractional position between the
+	 * two samples in the middle of the window (so output lags the input by
+	 * half the window).
+	 */
+	private short filter(double pos) {
+		int base = (int) (pos * PHASES) * TAPS;
+		float acc = 0;
+
+		// history[historyPos .. historyPos + TAPS) holds the window from the
+		// oldest to the newest sample.
+		for (int t = 0; t < TAPS; t++) {
+			acc += history[historyPos + t] * kernel[base + t];
+		}
+
+		if (acc > Short.MAX_VALUE) {
+			return Short.MAX_VALUE;
+		} else if (acc < Short.MIN_VALUE) {
+			return Short.MIN_VALUE;
+		}
+
+		return (short) acc;
+	}
+
+	/**
+	 * @param len
+	 *            : A number of input samples.
+	 * @return The maximum number of output samples they may produce.
+	 */
+	public int maxOutput(int len) {
+		return (int) (len / step) + 2;
+	}
+
+}
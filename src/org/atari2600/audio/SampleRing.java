@@ -0,0 +1,134 @@
+package org.atari2600.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single producer, single consumer ring of audio samples. The emulation thread
+ * offers samples and the audio thread polls them; neither of them ever locks
+ * or waits on the other. When the ring is full the newest samples are dropped
+ * and counted as overruns, one per sample.
+ */
+public class SampleRing {
+	private final byte[] ring;
+	private final int mask;
+
+	// Total samples written and read since creation. Only the producer writes
+	// head and only the consumer writes tail.
+	private final AtomicLong head, tail;
+
+	// Local copies of the other side's index, to avoid reading the atomic on
+	// every call.
+	private long cachedTail, cachedHead;
+
+	private volatile long overruns;
+
+	/**
+	 * @param capacity
+	 *            : The capacity of the ring. Rounded up to a power of two.
+	 */
+	public SampleRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+		ring = new byte[size];
+		mask = size - 1;
+		head = new AtomicLong();
+		tail = new AtomicLong();
+	}
+
+	/**
+	 * Producer side. Copies as many samples as fit into the ring.
+	 *
+	 * @param src
+	 *            : The samples to add.
+	 * @param off
+	 *            : The offset of the first sample.
+	 * @param len
+	 *            : The number of samples.
+	 * @return The number of samples actually added.
+	 */
+	public int offer(byte[] src, int off, int len) {
+		long h = head.get();
+		int free = ring.length - (int) (h - cachedTail);
+
+		if (free < len) {
+			cachedTail = tail.get();
+			free = ring.length - (int) (h - cachedTail);
+		}
+
+		int n = Math.min(free, len);
+
+		if (n < len) {
+			overruns += len - n;
+		}
+
+		copy(src, off, ring, (int) (h & mask), n, true);
+		head.lazySet(h + n);
+
+		return n;
+	}
+
+	/**
+	 * Consumer side. Copies up to len samples out of the ring.
+	 *
+	 * @param dst
+	 *            : The buffer to copy the samples to.
+	 * @param off
+	 *            : The offset where the first sample is copied.
+	 * @param len
+	 *            : The maximum number of samples to copy.
+	 * @return The number of samples copied.
+	 */
+	public int poll(byte[] dst, int off, int len) {
+		long t = tail.get();
+		int available = (int) (cachedHead - t);
+
+		if (available < len) {
+			cachedHead = head.get();
+			available = (int) (cachedHead - t);
+		}
+
+		int n = Math.min(available, len);
+
+		copy(ring, (int) (t & mask), dst, off, n, false);
+		tail.lazySet(t + n);
+
+		return n;
+	}
+
+	/**
+	 * Copies between the ring and a linear buffer, splitting the copy in two if
+	 * it wraps around the end of the ring.
+	 */
+	private void copy(byte[] src, int srcPos, byte[] dst, int dstPos, int n,
+			boolean intoRing) {
+		int pos = intoRing ? dstPos : srcPos;
+		int first = Math.min(n, ring.length - pos);
+
+		System.arraycopy(src, srcPos, dst, dstPos, first);
+
+		if (first < n) {
+			if (intoRing) {
+				System.arraycopy(src, srcPos + first, dst, 0, n - first);
+			} else {
+				System.arraycopy(src, 0, dst, dstPos + first, n - first);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of samples waiting to be consumed. May be called from
+	 *         any thread.
+	 */
+	public int size() {
+		return (int) (head.get() - tail.get());
+	}
+
+	public int capacity() {
+		return ring.length;
+	}
+
+	public long getOverruns() {
+		return overruns;
+	}
+
+}
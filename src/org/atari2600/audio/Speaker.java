@@ -0,0 +1,204 @@
+package org.atari2600.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import org.atari2600.tv.TVStandard;
+
+/**
+ * Audio output of the system, the counterpart of the TV for sound. The TIA
+ * hands its samples to the speaker once per frame; they go through a lock-free
+ * ring to a dedicated thread that resamples them and writes them to the sound
+ * card. The emulation thread never waits on the sound card: if the ring is full
+ * the samples are dropped (overrun), and if the sound card needs samples that
+ * are not there yet the last level is held (underrun).
+ */
+public class Speaker implements Runnable {
+	// Output frames written to the sound card in each chunk (about 5ms).
+	private static final int CHUNK = 256;
+
+	private final SampleRing ring;
+	private final float outRate;
+	private double inRate;
+
+	private SourceDataLine line;
+	private Thread writer;
+	private volatile boolean running;
+
+	private volatile long underruns;
+
+	public Speaker() {
+		this(44100f);
+	}
+
+	/**
+	 * @param outRate
+	 *            : The sound card sample rate (usually 44100 or 48000).
+	 */
+	public Speaker(float outRate) {
+		this.outRate = outRate;
+		inRate = TVStandard.NTSC.getAudioRate();
+
+		// About 130ms of TIA samples.
+		ring = new SampleRing(4096);
+	}
+
+	/**
+	 * Opens the sound card and starts the writer thread. If no sound card is
+	 * available the speaker stays mute, and the samples written to it are just
+	 * dropped.
+	 */
+	public void start() {
+		AudioFormat format = new AudioFormat(outRate, 16, 1, true, false);
+
+		try {
+			line = AudioSystem.getSourceDataLine(format);
+			line.open(format, CHUNK * 2 * 8);
+			line.start();
+		} catch (LineUnavailableException | IllegalArgumentException e) {
+			e.printStackTrace();
+			line = null;
+			return;
+		}
+
+		running = true;
+		writer = new Thread(this, "Speaker");
+		writer.setDaemon(true);
+		writer.setPriority(Thread.MAX_PRIORITY);
+		writer.start();
+	}
+
+	/**
+	 * Stops the writer thread and closes the sound card.
+	 */
+	public void stop() {
+		running = false;
+
+		if (writer != null) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			writer = null;
+		}
+
+		if (line != null) {
+			line.close();
+			line = null;
+		}
+	}
+
+	/**
+	 * Queues TIA samples to be played. Called from the emulation thread; it
+	 * never blocks.
+	 *
+	 * @param samples
+	 *            : The samples (levels from 0 to 30).
+	 * @param len
+	 *            : The number of samples.
+	 */
+	public void write(byte[] samples, int len) {
+		if (running) {
+			ring.offer(samples, 0, len);
+		}
+	}
+
+	/**
+	 * Writer thread loop: pulls chunks from the ring, resamples them and
+	 * writes them to the sound card, which blocks until there is room.
+	 */
+	@Override
+	public void run() {
+		Resampler resampler = new Resampler(inRate, outRate);
+		int needed = (int) Math.ceil(CHUNK * inRate / outRate);
+		byte[] in = new byte[needed];
+		short[] pcm = new short[resampler.maxOutput(needed)];
+		byte[] out = new byte[pcm.length * 2];
+		byte last = 0;
+
+		while (running) {
+			int n = ring.poll(in, 0, needed);
+
+			if (n < needed) {
+				// Not enough samples: hold the last level so there is no
+				// click, and keep the sound card fed.
+				underruns++;
+
+				if (n > 0) {
+					last = in[n - 1];
+				}
+
+				for (int i = n; i < needed; i++) {
+					in[i] = last;
+				}
+			} else {
+				last = in[n - 1];
+			}
+
+			int m = resampler.process(in, needed, pcm);
+
+			for (int i = 0; i < m; i++) {
+				out[i * 2] = (byte) pcm[i];
+				out[i * 2 + 1] = (byte) (pcm[i] >> 8);
+			}
+
+			line.write(out, 0, m * 2);
+		}
+	}
+
+	// Setters & getters --------------------------------
+
+	/**
+	 * Sets the TIA sample rate, which depends on the TV standard. Must be called
+	 * before start().
+	 *
+	 * @param inRate
+	 *            : The rate at which the TIA produces samples.
+	 */
+	public void setInputRate(double inRate) {
+		this.inRate = inRate;
+	}
+
+	public double getInputRate() {
+		return inRate;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public float getOutputRate() {
+		return outRate;
+	}
+
+	/**
+	 * @return The number of times the sound card needed samples that were not
+	 *         available yet.
+	 */
+	public long getUnderruns() {
+		return underruns;
+	}
+
+	/**
+	 * @return The number of samples dropped because the ring was full.
+	 */
+	public long getOverruns() {
+		return ring.getOverruns();
+	}
+
+	/**
+	 * @return The number of TIA samples waiting to be played.
+	 */
+	public int getBuffered() {
+		return ring.size();
+	}
+
+	public int getCapacity() {
+		return ring.capacity();
+	}
+
+}
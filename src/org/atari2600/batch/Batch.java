@@ -0,0 +1,319 @@
+package org.atari2600.batch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.core.Ram;
+import org.atari2600.input.Input;
+import org.atari2600.tv.TVStandard;
+import org.atari2600.util.M;
+
+/**
+ * Many instances of one cartridge run in lockstep. Each instance is a lane:
+ * the CPU registers, RAM, PIA and TIA state of all the lanes are kept in
+ * parallel arrays (see BatchCpu, BatchPia and BatchTia), and the cartridge
+ * and the opcode decode tables are shared by all of them.
+ *
+ * Every step runs one instruction on every lane that has not finished its
+ * frame, then the TIA clocks of every lane, then the timers and pending
+ * writes, so each phase goes over the lanes with the same code and the same
+ * tables. A lane reaches exactly the same state as an Atari2600 fed the same
+ * input: saveState() writes it in the Atari2600 format, so a lane can be
+ * handed to a full machine (with TV and sound) and back.
+ *
+ * There is no TV, sound, input latch, rewind or replay here: frames are
+ * drawn into a single buffer (see getPixels()), and the input of each lane
+ * is set with setInput() between frames.
+ */
+public class Batch {
+	private final Cartridge cart;
+	private final TVStandard standard;
+	private final int lanes;
+
+	private final BatchCpu cpu;
+	private final BatchMemory memory;
+	private final BatchPia pia;
+	private final BatchTia tia;
+
+	private final long[] cycles;
+	private final long[] input;
+
+	// Lanes still running the present frame, the first count entries, and
+	// the cycles of the instruction each one is running.
+	private final int[] active;
+	private final int[] stepCycles;
+	private final long[] frame;
+
+	/**
+	 * @param cart
+	 *            : The cartridge, run by every lane.
+	 * @param lanes
+	 *            : The number of lanes.
+	 * @param standard
+	 *            : The TV standard of the cartridge.
+	 */
+	public Batch(Cartridge cart, int lanes, TVStandard standard) {
+		if (lanes < 1) {
+			throw new IllegalArgumentException("At least one lane is needed");
+		}
+
+		this.cart = cart;
+		this.standard = standard;
+		this.lanes = lanes;
+
+		cpu = new BatchCpu(lanes);
+		memory = new BatchMemory(lanes, cart.mem);
+		pia = new BatchPia(lanes);
+		tia = new BatchTia(lanes, standard);
+
+		cpu.setMemory(memory);
+		memory.setTia(tia);
+		memory.setPia(pia);
+		tia.setCpu(cpu);
+		tia.setPia(pia);
+
+		cycles = new long[lanes];
+		input = new long[lanes];
+		active = new int[lanes];
+		stepCycles = new int[lanes];
+		frame = new long[lanes];
+
+		for (int l = 0; l < lanes; l++) {
+			applyInput(l, Input.DEFAULT);
+		}
+	}
+
+	/**
+	 * Boots every lane (see Cpu.boot()).
+	 */
+	public void boot() {
+		for (int l = 0; l < lanes; l++) {
+			cpu.boot(l);
+		}
+	}
+
+	/**
+	 * Runs a frame on every lane, as Atari2600.runFrame() does on a single
+	 * machine. Lanes that finish early wait for the rest.
+	 *
+	 * @param render
+	 *            : True to draw the frames into getPixels().
+	 */
+	public void runFrame(boolean render) {
+		int count = lanes;
+
+		tia.setRender(render);
+
+		for (int l = 0; l < lanes; l++) {
+			active[l] = l;
+			frame[l] = tia.getFrameCount(l);
+		}
+
+		while (count > 0) {
+			for (int i = 0; i < count; i++) {
+				int l = active[i];
+
+				stepCycles[l] = cpu.executeNext(l);
+			}
+
+			for (int i = 0; i < count; i++) {
+				int l = active[i];
+
+				tia.clock(l, stepCycles[l] * 3);
+			}
+
+			int running = 0;
+
+			for (int i = 0; i < count; i++) {
+				int l = active[i];
+
+				pia.updateTimer(l, stepCycles[l]);
+				memory.commit(l);
+				cycles[l] += stepCycles[l];
+
+				if (tia.getFrameCount(l) == frame[l]) {
+					active[running++] = l;
+				}
+			}
+
+			count = running;
+		}
+	}
+
+	/**
+	 * Executes a single instruction on a lane, with the TIA color clocks and
+	 * PIA timer cycles that go with it, as Atari2600.step() does. Not in
+	 * lockstep: meant for checks and debugging.
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @return The number of CPU cycles executed.
+	 */
+	public int step(int l) {
+		int cycles = cpu.executeNext(l);
+
+		tia.clock(l, cycles * 3);
+		pia.updateTimer(l, cycles);
+		memory.commit(l);
+		this.cycles[l] += cycles;
+
+		return cycles;
+	}
+
+	// Input ------------------------------------------------------
+
+	/**
+	 * Changes the input of a lane, which takes effect from the next
+	 * instruction on (see Atari2600.setInput()).
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param input
+	 *            : The new input word (see {@link Input}).
+	 */
+	public void setInput(int l, long input) {
+		if (input != this.input[l]) {
+			applyInput(l, input);
+		}
+	}
+
+	public long getInput(int l) {
+		return input[l];
+	}
+
+	private void applyInput(int l, long input) {
+		this.input[l] = input;
+
+		pia.setSwcha(l, Input.swcha(input));
+		pia.setSwchb(l, Input.swchb(input));
+		tia.setInputPort(l, M.INPT4, Input.inpt4(input));
+		tia.setInputPort(l, M.INPT5, Input.inpt5(input));
+
+		for (int i = 0; i < 4; i++) {
+			tia.setPaddle(l, i, Input.paddle(input, i));
+		}
+	}
+
+	// Save states ------------------------------------------------
+
+	/**
+	 * Writes the state of a lane as Atari2600.saveState() does, so it can be
+	 * loaded by either.
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param buf
+	 *            : The buffer to write to. Must have at least
+	 *            Atari2600.STATE_SIZE bytes remaining.
+	 */
+	public void saveState(int l, ByteBuffer buf) {
+		buf.putInt(Atari2600.STATE_MAGIC);
+		buf.put(Atari2600.STATE_VERSION);
+		buf.putLong(cycles[l]);
+		buf.putLong(input[l]);
+
+		cpu.saveState(l, buf);
+		memory.saveState(l, buf);
+		pia.saveRam(l, buf);
+		pia.saveIo(l, buf);
+		tia.saveState(l, buf);
+	}
+
+	/**
+	 * Restores the state of a lane, written by saveState() or
+	 * Atari2600.saveState().
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param buf
+	 *            : The buffer to read from.
+	 * @throws IllegalArgumentException
+	 *             If the buffer does not hold a state of this version.
+	 */
+	public void loadState(int l, ByteBuffer buf) {
+		if (buf.getInt() != Atari2600.STATE_MAGIC) {
+			throw new IllegalArgumentException("Not a saved state");
+		}
+
+		if (buf.get() != Atari2600.STATE_VERSION) {
+			throw new IllegalArgumentException("Unsupported state version");
+		}
+
+		cycles[l] = buf.getLong();
+		input[l] = buf.getLong();
+
+		cpu.loadState(l, buf);
+		memory.loadState(l, buf);
+		pia.loadRam(l, buf);
+		pia.loadIo(l, buf);
+		tia.loadState(l, buf);
+
+		// The paddle charge times are derived from the input.
+		applyInput(l, input[l]);
+	}
+
+	// Setters & getters --------------------------------
+
+	public Cartridge getCartridge() {
+		return cart;
+	}
+
+	public TVStandard getStandard() {
+		return standard;
+	}
+
+	public int getLanes() {
+		return lanes;
+	}
+
+	public BatchCpu getCpu() {
+		return cpu;
+	}
+
+	public BatchPia getPia() {
+		return pia;
+	}
+
+	public BatchTia getTia() {
+		return tia;
+	}
+
+	public long getCycles(int l) {
+		return cycles[l];
+	}
+
+	public long getFrameCount(int l) {
+		return tia.getFrameCount(l);
+	}
+
+	/**
+	 * @return The RAM of every lane, 128 bytes per lane one after another. It
+	 *         is not a copy.
+	 */
+	public byte[] getRam() {
+		return pia.getRam();
+	}
+
+	/**
+	 * Copies the RAM of a lane.
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @return The 128 bytes of its RAM.
+	 */
+	public byte[] getRam(int l) {
+		return Arrays.copyOfRange(pia.getRam(), l * Ram.STATE_SIZE,
+				(l + 1) * Ram.STATE_SIZE);
+	}
+
+	/**
+	 * @return The last frame rendered by every lane (see
+	 *         BatchTia.getPixels()).
+	 */
+	public int[] getPixels() {
+		return tia.getPixels();
+	}
+
+}
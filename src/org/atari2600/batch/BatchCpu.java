@@ -0,0 +1,1030 @@
+package org.atari2600.batch;
+
+import java.nio.ByteBuffer;
+
+import org.atari2600.util.M;
+
+/**
+ * The 6507 of every lane of a batch. The registers of all the lanes are kept
+ * in parallel arrays, indexed by lane, and the instructions are decoded with
+ * tables shared by the whole batch (addressing mode, operation and cycles of
+ * each opcode) instead of a switch per machine.
+ *
+ * Everything is done exactly as Cpu does it, quirks included, so a lane runs
+ * to the same state as a single machine: the save state of a lane is the
+ * same, byte for byte (see Batch).
+ */
+public class BatchCpu {
+	private final int lanes;
+	private BatchMemory mem;
+
+	private final int[] pc, sp, ac, x, y;
+	private final int[] instruction;
+
+	// Flags, laid out as in the save state: the status register in the low
+	// bits, then halted and page boundary crossed.
+	private final int[] status;
+
+	public static final int C = M.BIT_0;
+	public static final int Z = M.BIT_1;
+	public static final int I = M.BIT_2;
+	public static final int D = M.BIT_3;
+	public static final int B = M.BIT_4;
+	public static final int V = M.BIT_5;
+	public static final int N = M.BIT_6;
+	public static final int HALTED = M.BIT_7;
+	public static final int PB_CROSSED = M.BIT_8;
+
+	// The flags kept in save states.
+	private static final int STATE_FLAGS = 0x1FF;
+
+	/**
+	 * @param lanes
+	 *            : The number of lanes.
+	 */
+	public BatchCpu(int lanes) {
+		this.lanes = lanes;
+
+		pc = new int[lanes];
+		sp = new int[lanes];
+		ac = new int[lanes];
+		x = new int[lanes];
+		y = new int[lanes];
+		instruction = new int[lanes];
+		status = new int[lanes];
+	}
+
+	/**
+	 * Sets the pc of a lane to the start vector, as Cpu.boot() does.
+	 *
+	 * @param l
+	 *            : The lane.
+	 */
+	public void boot(int l) {
+		int h, lo;
+
+		lo = mem.read(l, 0x17FC);
+		h = mem.read(l, 0x17FD);
+
+		pc[l] = (h << 8) | lo;
+	}
+
+	public void halt(int l) {
+		status[l] |= HALTED;
+	}
+
+	public void resume(int l) {
+		status[l] &= ~HALTED;
+	}
+
+	/**
+	 * Executes the next instruction of a lane, unless it is halted.
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @return The number of cycles executed, or 1 if the lane is halted (see
+	 *         Cpu.executeNext()).
+	 */
+	public int executeNext(int l) {
+		if ((status[l] & HALTED) != 0) {
+			return 1;
+		}
+
+		return execute(l);
+	}
+
+	/**
+	 * Executes the next instruction of a lane. The opcode is looked up in the
+	 * decode tables: the addressing mode gives the effective address, then
+	 * the operation is done on it.
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @return The number of cycles executed.
+	 */
+	private int execute(int l) {
+		int opcode = mem.read(l, pc[l]++);
+		int addr = 0;
+		int cycles;
+
+		instruction[l] = opcode;
+
+		switch (MODE[opcode]) {
+		case IMM:
+			addr = imm(l);
+			break;
+
+		case ZP:
+			addr = zp(l);
+			break;
+
+		case ZPX:
+			addr = zpx(l);
+			break;
+
+		case ZPY:
+			addr = zpy(l);
+			break;
+
+		case REL:
+			addr = rel(l);
+			break;
+
+		case ABS:
+			addr = abs(l);
+			break;
+
+		case ABX:
+			addr = abx(l);
+			break;
+
+		case ABY:
+			addr = aby(l);
+			break;
+
+		case IND:
+			addr = ind(l);
+			break;
+
+		case INDX:
+			addr = indx(l);
+			break;
+
+		case INDY:
+			addr = indy(l);
+			break;
+
+		default:
+			break;
+		}
+
+		cycles = CYCLES[opcode];
+
+		if (PAGE_CYCLE[opcode] && (status[l] & PB_CROSSED) != 0) {
+			cycles++;
+		}
+
+		switch (OP[opcode]) {
+		case ADC:
+			adc(l, addr);
+			break;
+
+		case AND:
+			and(l, addr);
+			break;
+
+		case ASLA:
+			asla(l);
+			break;
+
+		case ASL:
+			asl(l, addr);
+			break;
+
+		case BCC:
+			cycles = branch(l, addr, (status[l] & C) == 0);
+			break;
+
+		case BCS:
+			cycles = branch(l, addr, (status[l] & C) != 0);
+			break;
+
+		case BEQ:
+			cycles = branch(l, addr, (status[l] & Z) != 0);
+			break;
+
+		case BMI:
+			cycles = branch(l, addr, (status[l] & N) != 0);
+			break;
+
+		case BNE:
+			cycles = branch(l, addr, (status[l] & Z) == 0);
+			break;
+
+		case BPL:
+			cycles = branch(l, addr, (status[l] & N) == 0);
+			break;
+
+		case BVC:
+			cycles = branch(l, addr, (status[l] & V) == 0);
+			break;
+
+		case BVS:
+			cycles = branch(l, addr, (status[l] & V) != 0);
+			break;
+
+		case BIT:
+			bit(l, addr);
+			break;
+
+		case BRK:
+			brk(l);
+			break;
+
+		case CLC:
+			status[l] &= ~C;
+			break;
+
+		case CLD:
+			status[l] &= ~D;
+			break;
+
+		case CLI:
+			status[l] &= ~I;
+			break;
+
+		case CLV:
+			status[l] &= ~V;
+			break;
+
+		case CMP:
+			cmp(l, addr, ac[l]);
+			break;
+
+		case CPX:
+			cmp(l, addr, x[l]);
+			break;
+
+		case CPY:
+			cmp(l, addr, y[l]);
+			break;
+
+		case DEC:
+			dec(l, addr);
+			break;
+
+		case DEX:
+			x[l] = (x[l] - 1) & 0xFF;
+			setNZ(l, x[l]);
+			break;
+
+		case DEY:
+			y[l] = (y[l] - 1) & 0xFF;
+			setNZ(l, y[l]);
+			break;
+
+		case EOR:
+			ac[l] ^= mem.read(l, addr);
+			setNZ(l, ac[l]);
+			break;
+
+		case INC:
+			inc(l, addr);
+			break;
+
+		case INX:
+			x[l] = (x[l] + 1) & 0xFF;
+			setNZ(l, x[l]);
+			break;
+
+		case INY:
+			y[l] = (y[l] + 1) & 0xFF;
+			setNZ(l, y[l]);
+			break;
+
+		case JMP:
+			pc[l] = addr;
+			break;
+
+		case JSR:
+			jsr(l, addr);
+			break;
+
+		case LDA:
+			ac[l] = mem.read(l, addr);
+			setNZ(l, ac[l]);
+			break;
+
+		case LDX:
+			x[l] = mem.read(l, addr);
+			setNZ(l, x[l]);
+			break;
+
+		case LDY:
+			y[l] = mem.read(l, addr);
+			setNZ(l, y[l]);
+			break;
+
+		case LSRA:
+			lsra(l);
+			break;
+
+		case LSR:
+			lsrm(l, addr);
+			break;
+
+		case NOP:
+			break;
+
+		case ORA:
+			ora(l, addr);
+			break;
+
+		case PHA:
+			mem.write(l, sp[l], ac[l]);
+			sp[l]--;
+			break;
+
+		case PHP:
+			mem.write(l, sp[l], getProcessorStatus(l));
+			sp[l]--;
+			break;
+
+		case PLA:
+			sp[l]++;
+			ac[l] = mem.read(l, sp[l]);
+			setNZ(l, ac[l]);
+			break;
+
+		case PLP:
+			sp[l]++;
+			setProcessorStatus(l, mem.read(l, sp[l]));
+			break;
+
+		case ROLA:
+			rola(l);
+			break;
+
+		case ROL:
+			rolm(l, addr);
+			break;
+
+		case RORA:
+			rora(l);
+			break;
+
+		case ROR:
+			rorm(l, addr);
+			break;
+
+		case RTI:
+			rti(l);
+			break;
+
+		case RTS:
+			rts(l);
+			break;
+
+		case SBC:
+			sbc(l, addr);
+			break;
+
+		case SEC:
+			status[l] |= C;
+			break;
+
+		case SED:
+			status[l] |= D;
+			break;
+
+		case SEI:
+			status[l] |= I;
+			break;
+
+		case STA:
+			mem.write(l, addr, ac[l]);
+			break;
+
+		case STX:
+			mem.write(l, addr, x[l]);
+			break;
+
+		case STY:
+			mem.write(l, addr, y[l]);
+			break;
+
+		case TAX:
+			x[l] = ac[l];
+			setNZ(l, x[l]);
+			break;
+
+		case TAY:
+			y[l] = ac[l];
+			setNZ(l, y[l]);
+			break;
+
+		case TSX:
+			x[l] = sp[l];
+			setNZ(l, x[l]);
+			break;
+
+		case TXA:
+			ac[l] = x[l];
+			setNZ(l, ac[l]);
+			break;
+
+		case TXS:
+			sp[l] = x[l];
+			break;
+
+		case TYA:
+			ac[l] = y[l];
+			setNZ(l, ac[l]);
+			break;
+
+		default:
+			break;
+		}
+
+		return cycles;
+	}
+
+	// Operations (see Cpu for the details) ---------------------
+
+	private void adc(int l, int addr) {
+		int data = mem.read(l, addr);
+		int a = ac[l];
+		int c = status[l] & C;
+		int t = a + data + c;
+
+		setFlag(l, V, (a & M.BIT_7) != (t & M.BIT_7));
+		setNZ(l, t);
+
+		if ((status[l] & D) != 0) {
+			t = bcd(a) + bcd(data) + c;
+			setFlag(l, C, t > 99);
+		} else {
+			setFlag(l, C, t > 255);
+		}
+
+		ac[l] = t & 0xFF;
+	}
+
+	private void and(int l, int addr) {
+		ac[l] &= mem.read(l, addr);
+		setNZ(l, ac[l]);
+	}
+
+	private void asla(int l) {
+		setFlag(l, C, (ac[l] & M.BIT_7) == M.BIT_7);
+		ac[l] <<= 1;
+		setNZ(l, ac[l]);
+	}
+
+	private void asl(int l, int addr) {
+		int data = mem.read(l, addr);
+
+		setFlag(l, C, (data & M.BIT_7) == M.BIT_7);
+		data = (data << 1) & 0xFE;
+		setNZ(l, data);
+
+		mem.write(l, addr, data);
+	}
+
+	/**
+	 * Takes a branch if its condition holds.
+	 *
+	 * @return The cycles of the branch.
+	 */
+	private int branch(int l, int addr, boolean taken) {
+		if (!taken) {
+			return 2;
+		}
+
+		pc[l] = addr;
+
+		return (status[l] & PB_CROSSED) != 0 ? 4 : 3;
+	}
+
+	private void bit(int l, int addr) {
+		int data = mem.read(l, addr) & ac[l];
+
+		setNZ(l, data);
+		setFlag(l, V, (data & M.BIT_6) != 0);
+	}
+
+	private void brk(int l) {
+		int lo, h;
+
+		pc[l]++;
+
+		mem.write(l, sp[l], pc[l] & 0xF0);
+		mem.commit(l);
+		sp[l]--;
+		mem.write(l, sp[l], pc[l] & 0xF);
+		mem.commit(l);
+		sp[l]--;
+		mem.write(l, sp[l], (status[l] & B) != 0 ? 1 : 0);
+		sp[l]--;
+
+		lo = mem.read(l, 0xFFFE);
+		h = mem.read(l, 0xFFFF) << 8;
+
+		pc[l] = h | lo;
+	}
+
+	private void cmp(int l, int addr, int r) {
+		int data = mem.read(l, addr);
+
+		setFlag(l, C, r >= data);
+		setNZ(l, r - data);
+	}
+
+	private void dec(int l, int addr) {
+		int data = (mem.read(l, addr) - 1) & 0xFF;
+
+		mem.write(l, addr, data);
+		setNZ(l, data);
+	}
+
+	private void inc(int l, int addr) {
+		int data = (mem.read(l, addr) + 1) & 0xFF;
+
+		mem.write(l, addr, data);
+		setNZ(l, data);
+	}
+
+	private void jsr(int l, int addr) {
+		int t = pc[l] - 1;
+
+		mem.write(l, sp[l], (t & 0xFF00) >> 8);
+		mem.commit(l);
+		sp[l]--;
+		mem.write(l, sp[l], t & 0xFF);
+		sp[l]--;
+
+		pc[l] = addr;
+	}
+
+	private void lsra(int l) {
+		status[l] &= ~N;
+		setFlag(l, C, (ac[l] & M.BIT_0) != 0);
+		ac[l] = (ac[l] >> 1) & 0x7F;
+		setFlag(l, Z, ac[l] == 0);
+	}
+
+	private void lsrm(int l, int addr) {
+		int data = mem.read(l, addr);
+
+		status[l] &= ~N;
+		setFlag(l, C, (data & M.BIT_0) != 0);
+		data = (data >> 1) & 0x7F;
+		setFlag(l, Z, data == 0);
+
+		mem.write(l, addr, data);
+	}
+
+	private void ora(int l, int addr) {
+		int data = mem.read(l, addr);
+
+		// The flags come from the operand, as in Cpu.
+		ac[l] |= data;
+		setNZ(l, data);
+	}
+
+	private void rola(int l) {
+		boolean carry = (ac[l] & M.BIT_7) != 0;
+
+		ac[l] = ((ac[l] << 1) & 0xFE) | (status[l] & C);
+		setFlag(l, C, carry);
+		setNZ(l, ac[l]);
+	}
+
+	private void rolm(int l, int addr) {
+		int data = mem.read(l, addr);
+		boolean carry = (data & M.BIT_7) != 0;
+
+		data = ((data << 1) & 0xFE) | (status[l] & C);
+		setFlag(l, C, carry);
+		setNZ(l, data);
+
+		mem.write(l, addr, data);
+	}
+
+	private void rora(int l) {
+		boolean carry = (ac[l] & M.BIT_0) != 0;
+
+		ac[l] = ((ac[l] >> 1) & 0x7F) | ((status[l] & C) != 0 ? 0x80 : 0);
+		setFlag(l, C, carry);
+		setNZ(l, ac[l]);
+	}
+
+	private void rorm(int l, int addr) {
+		int data = mem.read(l, addr);
+		boolean carry = (data & M.BIT_0) != 0;
+
+		data = ((data >> 1) & 0x7F) | ((status[l] & C) != 0 ? 0x80 : 0);
+		setFlag(l, C, carry);
+		setNZ(l, data);
+
+		mem.write(l, addr, data);
+	}
+
+	private void rti(int l) {
+		int lo, h;
+
+		sp[l]--;
+		setProcessorStatus(l, mem.read(l, sp[l]));
+		sp[l]--;
+		lo = mem.read(l, sp[l]);
+		sp[l]--;
+		h = mem.read(l, sp[l]);
+
+		pc[l] = (h << 8) | lo;
+	}
+
+	private void rts(int l) {
+		int lo, h;
+
+		sp[l]++;
+		lo = mem.read(l, sp[l]);
+		sp[l]++;
+		h = mem.read(l, sp[l]);
+
+		pc[l] = ((h << 8) | lo) + 1;
+	}
+
+	private void sbc(int l, int addr) {
+		int data = mem.read(l, addr);
+		int borrow = (status[l] & C) != 0 ? 0 : 1;
+		int t;
+
+		if ((status[l] & D) != 0) {
+			t = bcd(ac[l]) - bcd(data) - borrow;
+			setFlag(l, V, t > 99 || t < 0);
+		} else {
+			t = ac[l] - data - borrow;
+			setFlag(l, V, t > 127 || t < -128);
+		}
+
+		setFlag(l, C, t >= 0);
+		setNZ(l, t);
+
+		ac[l] = t & 0xFF;
+	}
+
+	// Addressing modes (see Cpu) -------------------------------
+
+	private int imm(int l) {
+		// Cpu reads the byte after the operand too, which may have side
+		// effects.
+		mem.read(l, pc[l] + 1);
+		return pc[l]++;
+	}
+
+	private int zp(int l) {
+		return mem.read(l, pc[l]++) & 0xFF;
+	}
+
+	private int zpx(int l) {
+		return (mem.read(l, pc[l]++) + x[l]) & 0xFF;
+	}
+
+	private int zpy(int l) {
+		return (mem.read(l, pc[l]++) + y[l]) & 0xFF;
+	}
+
+	private int rel(int l) {
+		int offset = (byte) mem.read(l, pc[l]++);
+		int addr = pc[l] + offset;
+
+		pageBoundaryCrossed(l, pc[l], addr);
+
+		return addr;
+	}
+
+	private int abs(int l) {
+		return mem.read(l, pc[l]++) | (mem.read(l, pc[l]++) << 8);
+	}
+
+	private int abx(int l) {
+		int before = mem.read(l, pc[l]++) | (mem.read(l, pc[l]++) << 8);
+		int after = before + x[l];
+
+		pageBoundaryCrossed(l, before, after);
+
+		return after & 0xFFFF;
+	}
+
+	private int aby(int l) {
+		int before = mem.read(l, pc[l]++) | (mem.read(l, pc[l]++) << 8);
+		int after = before + y[l];
+
+		pageBoundaryCrossed(l, before, after);
+
+		return after & 0xFFFF;
+	}
+
+	private int ind(int l) {
+		int operand = mem.read(l, pc[l]++) & 0xFF;
+
+		return mem.read(l, operand) | (mem.read(l, operand + 1) << 8);
+	}
+
+	private int indx(int l) {
+		int operand = mem.read(l, pc[l]++) & 0xFF;
+
+		return mem.read(l, operand + x[l])
+				| (mem.read(l, operand + 1 + x[l]) << 8);
+	}
+
+	private int indy(int l) {
+		int operand = mem.read(l, pc[l]++) & 0xFF;
+		int before = mem.read(l, mem.read(l, operand)
+				| (mem.read(l, operand + 1) << 8));
+		int after = before + y[l];
+
+		pageBoundaryCrossed(l, before, after);
+
+		return after;
+	}
+
+	private void pageBoundaryCrossed(int l, int addr1, int addr2) {
+		setFlag(l, PB_CROSSED, ((addr1 ^ addr2) & M.BIT_8) != 0);
+	}
+
+	// Flags ----------------------------------------------------
+
+	private void setFlag(int l, int flag, boolean set) {
+		if (set) {
+			status[l] |= flag;
+		} else {
+			status[l] &= ~flag;
+		}
+	}
+
+	private void setNZ(int l, int data) {
+		setFlag(l, N, (data & M.BIT_7) == M.BIT_7);
+		setFlag(l, Z, data == 0);
+	}
+
+	/**
+	 * @return The status register as pushed on the stack (see
+	 *         Cpu.ProcessorStatus).
+	 */
+	private int getProcessorStatus(int l) {
+		int s = status[l];
+
+		return (s & (C | Z | I | D | B)) | ((s & V) != 0 ? 1 << 6 : 0)
+				| ((s & N) != 0 ? 1 << 7 : 0);
+	}
+
+	/**
+	 * Pulls the status register from the stack the way
+	 * Cpu.ProcessorStatus does, which reads N from bit 6 and V from bit 7.
+	 */
+	private void setProcessorStatus(int l, int p) {
+		status[l] = (status[l] & (HALTED | PB_CROSSED)) | (p & (C | Z | I | D | B))
+				| ((p & M.BIT_6) != 0 ? N : 0) | ((p & M.BIT_7) != 0 ? V : 0);
+	}
+
+	private static int bcd(int n) {
+		return (n & 0xF) + ((n & 0xF0) * 10);
+	}
+
+	// Save states ----------------------------------------------
+
+	/**
+	 * Writes the state of a lane as Cpu.saveState() does.
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param buf
+	 *            : The buffer to write to.
+	 */
+	public void saveState(int l, ByteBuffer buf) {
+		buf.putInt(pc[l]);
+		buf.putShort((short) sp[l]);
+		buf.putShort((short) ac[l]);
+		buf.putShort((short) x[l]);
+		buf.putShort((short) y[l]);
+		buf.put((byte) instruction[l]);
+		buf.putShort((short) status[l]);
+	}
+
+	/**
+	 * Reads the state of a lane written by saveState() or Cpu.saveState().
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param buf
+	 *            : The buffer to read from.
+	 */
+	public void loadState(int l, ByteBuffer buf) {
+		pc[l] = buf.getInt();
+		sp[l] = buf.getShort();
+		ac[l] = buf.getShort();
+		x[l] = buf.getShort();
+		y[l] = buf.getShort();
+		instruction[l] = buf.get() & 0xFF;
+		status[l] = buf.getShort() & STATE_FLAGS;
+	}
+
+	// Setters & getters --------------------------------
+
+	public int getLanes() {
+		return lanes;
+	}
+
+	public BatchMemory getMemory() {
+		return mem;
+	}
+
+	public void setMemory(BatchMemory mem) {
+		this.mem = mem;
+	}
+
+	public int getPc(int l) {
+		return pc[l];
+	}
+
+	public int getSp(int l) {
+		return sp[l];
+	}
+
+	public int getAc(int l) {
+		return ac[l];
+	}
+
+	public int getX(int l) {
+		return x[l];
+	}
+
+	public int getY(int l) {
+		return y[l];
+	}
+
+	public int getStatus(int l) {
+		return status[l];
+	}
+
+	// Decode tables --------------------------------------------
+
+	// Addressing modes.
+	private static final int IMPLIED = 0, IMM = 1, ZP = 2, ZPX = 3, ZPY = 4,
+			REL = 5, ABS = 6, ABX = 7, ABY = 8, IND = 9, INDX = 10, INDY = 11;
+
+	// Operations. Opcodes Cpu does not know have NONE: they take no cycles.
+	private static final int NONE = 0, ADC = 1, AND = 2, ASLA = 3, ASL = 4,
+			BCC = 5, BCS = 6, BEQ = 7, BMI = 8, BNE = 9, BPL = 10, BVC = 11,
+			BVS = 12, BIT = 13, BRK = 14, CLC = 15, CLD = 16, CLI = 17,
+			CLV = 18, CMP = 19, CPX = 20, CPY = 21, DEC = 22, DEX = 23,
+			DEY = 24, EOR = 25, INC = 26, INX = 27, INY = 28, JMP = 29,
+			JSR = 30, LDA = 31, LDX = 32, LDY = 33, LSRA = 34, LSR = 35,
+			NOP = 36, ORA = 37, PHA = 38, PHP = 39, PLA = 40, PLP = 41,
+			ROLA = 42, ROL = 43, RORA = 44, ROR = 45, RTI = 46, RTS = 47,
+			SBC = 48, SEC = 49, SED = 50, SEI = 51, STA = 52, STX = 53,
+			STY = 54, TAX = 55, TAY = 56, TSX = 57, TXA = 58, TXS = 59,
+			TYA = 60;
+
+	// For each opcode: its operation, its addressing mode, its cycles and
+	// whether a page boundary crossed adds a cycle. They copy the cases of
+	// Cpu.execute(), including the odd ones (ORA always reads an immediate
+	// operand, CLV takes no cycles and so on). Branches work their cycles out
+	// on their own.
+	private static final int[] OP = new int[256];
+	private static final int[] MODE = new int[256];
+	private static final int[] CYCLES = new int[256];
+	private static final boolean[] PAGE_CYCLE = new boolean[256];
+
+	private static void decode(int opcode, int op, int mode, int cycles,
+			boolean page) {
+		OP[opcode] = op;
+		MODE[opcode] = mode;
+		CYCLES[opcode] = cycles;
+		PAGE_CYCLE[opcode] = page;
+	}
+
+	/**
+	 * Decodes the eight usual addressing modes of an arithmetic operation.
+	 */
+	private static void decodeGroup(int op, int imm, int zp, int zpx, int abs,
+			int abx, int aby, int indx, int indy) {
+		decode(imm, op, IMM, 2, false);
+		decode(zp, op, ZP, 3, false);
+		decode(zpx, op, ZPX, 4, false);
+		decode(abs, op, ABS, 4, false);
+		decode(abx, op, ABX, 4, true);
+		decode(aby, op, ABY, 4, true);
+		decode(indx, op, INDX, 6, false);
+		decode(indy, op, INDY, 5, true);
+	}
+
+	/**
+	 * Decodes the five addressing modes of a read-modify-write operation.
+	 */
+	private static void decodeShift(int op, int acc, int opAcc, int zp,
+			int zpx, int abs, int abx) {
+		decode(acc, opAcc, IMPLIED, 2, false);
+		decode(zp, op, ZP, 5, false);
+		decode(zpx, op, ZPX, 6, false);
+		decode(abs, op, ABS, 6, false);
+		decode(abx, op, ABX, 7, false);
+	}
+
+	static {
+		decodeGroup(ADC, 0x69, 0x65, 0x75, 0x6D, 0x7D, 0x79, 0x61, 0x71);
+		decodeGroup(AND, 0x29, 0x25, 0x35, 0x2D, 0x3D, 0x39, 0x21, 0x31);
+		// Cpu gives AND zero page 2 cycles and AND zero page,X 3.
+		decode(0x25, AND, ZP, 2, false);
+		decode(0x35, AND, ZPX, 3, false);
+		decodeGroup(CMP, 0xC9, 0xC5, 0xD5, 0xCD, 0xDD, 0xD9, 0xC1, 0xD1);
+		decodeGroup(EOR, 0x49, 0x45, 0x55, 0x4D, 0x5D, 0x59, 0x41, 0x51);
+		decodeGroup(LDA, 0xA9, 0xA5, 0xB5, 0xAD, 0xBD, 0xB9, 0xA1, 0xB1);
+		decodeGroup(SBC, 0xE9, 0xE5, 0xF5, 0xED, 0xFD, 0xF9, 0xE1, 0xF1);
+
+		// Cpu reads an immediate operand for every ORA.
+		decode(0x09, ORA, IMM, 2, false);
+		decode(0x05, ORA, IMM, 2, false);
+		decode(0x15, ORA, IMM, 3, false);
+		decode(0x0D, ORA, IMM, 4, false);
+		decode(0x1D, ORA, IMM, 4, true);
+		decode(0x19, ORA, IMM, 4, true);
+		decode(0x01, ORA, IMM, 6, false);
+		decode(0x11, ORA, IMM, 5, true);
+
+		decodeShift(ASL, 0x0A, ASLA, 0x06, 0x16, 0x0E, 0x1E);
+		decodeShift(LSR, 0x4A, LSRA, 0x46, 0x56, 0x4E, 0x5E);
+		decodeShift(ROL, 0x2A, ROLA, 0x26, 0x36, 0x2E, 0x3E);
+		decodeShift(ROR, 0x6A, RORA, 0x66, 0x76, 0x6E, 0x7E);
+
+		decode(0xC6, DEC, ZP, 5, false);
+		decode(0xD6, DEC, ZPX, 6, false);
+		decode(0xCE, DEC, ABS, 6, false);
+		decode(0xDE, DEC, ABX, 7, false);
+		decode(0xE6, INC, ZP, 5, false);
+		decode(0xF6, INC, ZPX, 6, false);
+		decode(0xEE, INC, ABS, 6, false);
+		decode(0xFE, INC, ABX, 7, false);
+
+		decode(0x90, BCC, REL, 2, false);
+		decode(0xB0, BCS, REL, 2, false);
+		decode(0xF0, BEQ, REL, 2, false);
+		decode(0x30, BMI, REL, 2, false);
+		decode(0xD0, BNE, REL, 2, false);
+		decode(0x10, BPL, REL, 2, false);
+		decode(0x50, BVC, REL, 2, false);
+		decode(0x70, BVS, REL, 2, false);
+
+		decode(0x24, BIT, ZP, 3, false);
+		decode(0x2C, BIT, ABS, 4, false);
+		decode(0x00, BRK, IMPLIED, 7, false);
+
+		decode(0x18, CLC, IMPLIED, 2, false);
+		decode(0xD8, CLD, IMPLIED, 2, false);
+		decode(0x58, CLI, IMPLIED, 2, false);
+		decode(0xB8, CLV, IMPLIED, 0, false);
+
+		decode(0xE0, CPX, IMM, 2, false);
+		decode(0xE4, CPX, ZP, 3, false);
+		decode(0xEC, CPX, ABS, 4, false);
+		decode(0xC0, CPY, IMM, 2, false);
+		decode(0xC4, CPY, ZP, 3, false);
+		decode(0xCC, CPY, ABS, 4, false);
+
+		decode(0xCA, DEX, IMPLIED, 2, false);
+		decode(0x88, DEY, IMPLIED, 2, false);
+		decode(0xE8, INX, IMPLIED, 2, false);
+		decode(0xC8, INY, IMPLIED, 2, false);
+
+		decode(0x4C, JMP, ABS, 3, false);
+		decode(0x6C, JMP, IND, 5, false);
+		decode(0x20, JSR, ABS, 6, false);
+
+		decode(0xA2, LDX, IMM, 2, false);
+		decode(0xA6, LDX, ZP, 3, false);
+		decode(0xB6, LDX, ZPY, 4, false);
+		decode(0xAE, LDX, ABS, 4, false);
+		decode(0xBE, LDX, ABY, 4, true);
+		decode(0xA0, LDY, IMM, 2, false);
+		decode(0xA4, LDY, ZP, 3, false);
+		decode(0xB4, LDY, ZPX, 4, false);
+		decode(0xAC, LDY, ABS, 4, false);
+		decode(0xBC, LDY, ABX, 4, true);
+
+		decode(0xEA, NOP, IMPLIED, 2, false);
+
+		decode(0x48, PHA, IMPLIED, 3, false);
+		decode(0x08, PHP, IMPLIED, 3, false);
+		decode(0x68, PLA, IMPLIED, 4, false);
+		decode(0x28, PLP, IMPLIED, 4, false);
+
+		decode(0x40, RTI, IMPLIED, 6, false);
+		decode(0x60, RTS, IMPLIED, 6, false);
+
+		decode(0x38, SEC, IMPLIED, 2, false);
+		decode(0xF8, SED, IMPLIED, 2, false);
+		decode(0x78, SEI, IMPLIED, 2, false);
+
+		decode(0x85, STA, ZP, 3, false);
+		decode(0x95, STA, ZPX, 4, false);
+		decode(0x8D, STA, ABS, 4, false);
+		decode(0x9D, STA, ABX, 4, true);
+		decode(0x99, STA, ABY, 4, true);
+		decode(0x81, STA, INDX, 6, false);
+		decode(0x91, STA, INDY, 5, true);
+		decode(0x86, STX, ZP, 3, false);
+		decode(0x96, STX, ZPY, 4, false);
+		decode(0x8E, STX, ABS, 4, false);
+		decode(0x84, STY, ZP, 3, false);
+		decode(0x94, STY, ZPX, 4, false);
+		decode(0x8C, STY, ABS, 4, false);
+
+		decode(0xAA, TAX, IMPLIED, 2, false);
+		decode(0xA8, TAY, IMPLIED, 2, false);
+		decode(0xBA, TSX, IMPLIED, 2, false);
+		decode(0x8A, TXA, IMPLIED, 2, false);
+		decode(0x9A, TXS, IMPLIED, 2, false);
+		decode(0x98, TYA, IMPLIED, 2, false);
+	}
+}
@@ -0,0 +1,123 @@
+package org.atari2600.batch;
+
+import java.nio.ByteBuffer;
+
+import org.atari2600.util.M;
+
+/**
+ * The memory map of every lane of a batch, as in Memory. The cartridge is
+ * shared by all the lanes, and the pending write of each lane is kept in
+ * parallel arrays.
+ */
+public class BatchMemory {
+	private final int[] rom;
+	private BatchTia tia;
+	private BatchPia pia;
+
+	private final boolean[] waitForCommit;
+	private final int[] addr, data;
+
+	/**
+	 * @param lanes
+	 *            : The number of lanes.
+	 * @param rom
+	 *            : The contents of the cartridge (see Cartridge), read by
+	 *            every lane.
+	 */
+	public BatchMemory(int lanes, int[] rom) {
+		this.rom = rom;
+
+		waitForCommit = new boolean[lanes];
+		addr = new int[lanes];
+		data = new int[lanes];
+	}
+
+	/**
+	 * Sets a write of a lane ready for commitment (see Memory.write()).
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param addr
+	 *            : The address to write to.
+	 * @param data
+	 *            : The data to write.
+	 */
+	public void write(int l, int addr, int data) {
+		waitForCommit[l] = true;
+		this.addr[l] = addr;
+		this.data[l] = data;
+	}
+
+	/**
+	 * Does the pending write of a lane, if any (see Memory.commit()).
+	 *
+	 * @param l
+	 *            : The lane.
+	 */
+	public void commit(int l) {
+		if (waitForCommit[l]) {
+			int a = addr[l];
+
+			if (((a & M.BIT_7) == 0) && ((a & M.BIT_12) == 0)) {
+				tia.write(l, a & 0x3F, data[l]);
+			} else if (((a & M.BIT_7) == M.BIT_7) && ((a & M.BIT_12) == 0)) {
+				pia.write(l, a, data[l]);
+			}
+
+			// Writes to the cartridge are lost.
+
+			waitForCommit[l] = false;
+		}
+	}
+
+	public int read(int l, int addr) {
+		if ((addr & M.BIT_12) != 0) {
+			return rom[addr & 0xFFF];
+		} else if (((addr & M.BIT_7) == 0) && ((addr & M.BIT_12) == 0)) {
+			return tia.read(l, addr & 0x3F);
+		} else if (((addr & M.BIT_7) == M.BIT_7) && ((addr & M.BIT_12) == 0)) {
+			return pia.read(l, addr);
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Writes the pending write of a lane as Memory.saveState() does.
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param buf
+	 *            : The buffer to write to.
+	 */
+	public void saveState(int l, ByteBuffer buf) {
+		buf.put((byte) (waitForCommit[l] ? 1 : 0));
+		buf.putShort((short) addr[l]);
+		buf.putShort((short) data[l]);
+	}
+
+	public void loadState(int l, ByteBuffer buf) {
+		waitForCommit[l] = buf.get() != 0;
+		addr[l] = buf.getShort() & 0xFFFF;
+		data[l] = buf.getShort();
+	}
+
+	// Setters & getters --------------------------------
+
+	public BatchTia getTia() {
+		return tia;
+	}
+
+	public void setTia(BatchTia tia) {
+		this.tia = tia;
+	}
+
+	public BatchPia getPia() {
+		return pia;
+	}
+
+	public void setPia(BatchPia pia) {
+		this.pia = pia;
+	}
+
+}
@@ -0,0 +1,249 @@
+package org.atari2600.batch;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import org.atari2600.core.Ram;
+import org.atari2600.util.M;
+
+/**
+ * The PIA of every lane of a batch: the RAM and the IO and timer registers,
+ * as in Pia, Ram and IOTimer. The RAM of all the lanes is a single array, 128
+ * bytes per lane one after another, and the registers and the timer state are
+ * kept in parallel arrays.
+ */
+public class BatchPia {
+	private static final int REGS = 6;
+
+	private final byte[] ram;
+
+	private final int[] regs;
+	private final int[] swchaWrite, swchbWrite;
+	private final int[] tim, interval;
+	private final boolean[] timEnable, countdown;
+
+	/**
+	 * @param lanes
+	 *            : The number of lanes.
+	 */
+	public BatchPia(int lanes) {
+		ram = new byte[lanes * Ram.STATE_SIZE];
+		regs = new int[lanes * REGS];
+		swchaWrite = new int[lanes];
+		swchbWrite = new int[lanes];
+		tim = new int[lanes];
+		interval = new int[lanes];
+		timEnable = new boolean[lanes];
+		countdown = new boolean[lanes];
+
+		// Switches and joysticks as IOTimer sets them.
+		for (int l = 0; l < lanes; l++) {
+			regs[l * REGS + M.SWCHB] = M.BIT_0 | M.BIT_1 | M.BIT_2 | M.BIT_3
+					| M.BIT_4 | M.BIT_5;
+			regs[l * REGS + M.SWCHA] = 0xFF;
+		}
+	}
+
+	public void write(int l, int addr, int data) {
+		if (((addr & M.BIT_12) == 0) && ((addr & M.BIT_9) == 0)
+				&& ((addr & M.BIT_7) != 0)) {
+			ram[l * Ram.STATE_SIZE + (addr & 0x7F)] = (byte) data;
+		} else {
+			writeIo(l, addr & 0x7F, data);
+		}
+	}
+
+	public int read(int l, int addr) {
+		if (((addr & M.BIT_12) == 0) && ((addr & M.BIT_9) == 0)
+				&& ((addr & M.BIT_7) != 0)) {
+			return ram[l * Ram.STATE_SIZE + (addr & 0x7F)] & 0xFF;
+		} else {
+			return readIo(l, addr & 0x1F);
+		}
+	}
+
+	/**
+	 * Writes to the IO and timer registers (see IOTimer.write()).
+	 */
+	private void writeIo(int l, int addr, int data) {
+		if ((addr & M.BIT_2) == 0) {
+			switch (addr & 0x3) {
+			case M.SWCHA:
+				swchaWrite[l] = data;
+				break;
+
+			case M.SWCHB:
+				swchbWrite[l] = data;
+				break;
+
+			default:
+				regs[l * REGS + (addr & 0x3)] = data;
+				break;
+			}
+		} else if ((addr & M.BIT_4) != 0) {
+			// INTIM and INSTAT are read only; the timers start here.
+			setTimer(l, addr & 0x3, data);
+		}
+	}
+
+	/**
+	 * Reads the IO and timer registers (see IOTimer.read()).
+	 */
+	private int readIo(int l, int addr) {
+		// IOTimer has six registers: the other two mirrors fail there, and
+		// must not read the next lane here.
+		int base = l * REGS;
+		int t = regs[base + Objects.checkIndex(addr & 0x7, REGS)];
+
+		switch (addr) {
+		case M.INSTAT:
+			regs[base + M.INSTAT] &= ~M.BIT_6;
+			break;
+
+		case M.INTIM:
+			regs[base + M.INSTAT] &= ~M.BIT_7;
+			break;
+
+		default:
+			break;
+		}
+
+		return t;
+	}
+
+	private void setTimer(int l, int timer, int data) {
+		switch (timer) {
+		case 0:
+			interval[l] = 1;
+			break;
+
+		case 1:
+			interval[l] = 8;
+			break;
+
+		case 2:
+			interval[l] = 64;
+			break;
+
+		case 3:
+			interval[l] = 1024;
+			break;
+
+		default:
+			break;
+		}
+
+		regs[l * REGS + M.INTIM] = (data - 1) & 0xFF;
+		timEnable[l] = true;
+	}
+
+	/**
+	 * Updates the timer of a lane (see IOTimer.updateTimer()).
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param cycles
+	 *            : The CPU cycles elapsed.
+	 */
+	public void updateTimer(int l, int cycles) {
+		int intim = l * REGS + M.INTIM;
+
+		for (int i = 0; i < cycles; i++) {
+			if (timEnable[l]) {
+				if (++tim[l] == interval[l]) {
+					tim[l] = 0;
+
+					if (regs[intim] < 0) {
+						timEnable[l] = false;
+						countdown[l] = true;
+						regs[intim] = 0xFF;
+						regs[l * REGS + M.INSTAT] |= M.BIT_7;
+					} else {
+						regs[intim]--;
+					}
+				}
+			} else if (countdown[l]) {
+				if (regs[intim] != 0) {
+					regs[intim]--;
+				} else {
+					countdown[l] = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the levels of the port A pins of a lane.
+	 */
+	public void setSwcha(int l, int value) {
+		regs[l * REGS + M.SWCHA] = value & 0xFF;
+	}
+
+	/**
+	 * Sets the levels of the port B pins of a lane.
+	 */
+	public void setSwchb(int l, int value) {
+		regs[l * REGS + M.SWCHB] = value & 0xFF;
+	}
+
+	/**
+	 * @return The console switches of a lane, as read from SWCHB.
+	 */
+	public int getSwchb(int l) {
+		return regs[l * REGS + M.SWCHB];
+	}
+
+	/**
+	 * @return The RAM of every lane, 128 bytes per lane one after another. It
+	 *         is not a copy.
+	 */
+	public byte[] getRam() {
+		return ram;
+	}
+
+	// Save states ----------------------------------------------
+
+	/**
+	 * Writes the RAM of a lane as Ram.saveState() does.
+	 */
+	public void saveRam(int l, ByteBuffer buf) {
+		buf.put(ram, l * Ram.STATE_SIZE, Ram.STATE_SIZE);
+	}
+
+	public void loadRam(int l, ByteBuffer buf) {
+		buf.get(ram, l * Ram.STATE_SIZE, Ram.STATE_SIZE);
+	}
+
+	/**
+	 * Writes the registers and the timer of a lane as IOTimer.saveState()
+	 * does.
+	 */
+	public void saveIo(int l, ByteBuffer buf) {
+		for (int i = 0; i < REGS; i++) {
+			buf.putShort((short) regs[l * REGS + i]);
+		}
+
+		buf.put((byte) swchaWrite[l]);
+		buf.put((byte) swchbWrite[l]);
+		buf.putShort((short) tim[l]);
+		buf.putShort((short) interval[l]);
+		buf.put((byte) ((timEnable[l] ? 1 : 0) | (countdown[l] ? 2 : 0)));
+	}
+
+	public void loadIo(int l, ByteBuffer buf) {
+		for (int i = 0; i < REGS; i++) {
+			regs[l * REGS + i] = buf.getShort();
+		}
+
+		swchaWrite[l] = buf.get() & 0xFF;
+		swchbWrite[l] = buf.get() & 0xFF;
+		tim[l] = buf.getShort();
+		interval[l] = buf.getShort();
+
+		int flags = buf.get();
+
+		timEnable[l] = (flags & 1) != 0;
+		countdown[l] = (flags & 2) != 0;
+	}
+
+}
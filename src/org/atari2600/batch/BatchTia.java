@@ -0,0 +1,1073 @@
+package org.atari2600.batch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.atari2600.core.PFO;
+import org.atari2600.tv.TVFrame;
+import org.atari2600.tv.TVStandard;
+import org.atari2600.util.M;
+
+/**
+ * The TIA of every lane of a batch. Registers, beam, object counters, line
+ * buffers, collision masks and audio counters of all the lanes are kept in
+ * parallel arrays, indexed by lane (registers and line buffers take a slice
+ * per lane).
+ *
+ * Drawing, collisions and audio are done exactly as in Tia, quirks included,
+ * so a lane draws the same frames and reaches the same state as a single
+ * machine. Frames are drawn into a single buffer, a frame per lane, and the
+ * sound is not output: the audio counters only run because they are part of
+ * the state.
+ */
+public class BatchTia {
+	private static final int WIDTH = TVFrame.WIDTH;
+	private static final int REGS = 64;
+	private static final int PFO_COUNT = PFO.values().length;
+	private static final int COVERAGE = PFO_COUNT * 4;
+
+	// PFO ordinals, which give the priority of the objects.
+	private static final int BG = PFO.BG.ordinal();
+	private static final int PF = PFO.PF.ordinal();
+	private static final int BL = PFO.B.ordinal();
+	private static final int M1 = PFO.M1.ordinal();
+	private static final int P1 = PFO.P1.ordinal();
+	private static final int M0 = PFO.M0.ordinal();
+	private static final int P0 = PFO.P0.ordinal();
+
+	// Strobes and vertical delays, as laid out in the save state.
+	private static final int RESET_P0 = 1;
+	private static final int RESET_P1 = 1 << 1;
+	private static final int RESET_M0 = 1 << 2;
+	private static final int RESET_M1 = 1 << 3;
+	private static final int RESET_BL = 1 << 4;
+	private static final int HORIZ_MOVE = 1 << 5;
+	private static final int DELAY_P0 = 1 << 6;
+	private static final int DELAY_P1 = 1 << 7;
+	private static final int DELAY_B = 1 << 8;
+
+	// Audio flags, as laid out in the save state.
+	private static final int CLOCK_ENABLE = 1;
+	private static final int NOISE_FEEDBACK = 2;
+	private static final int NOISE_BIT4 = 4;
+	private static final int PULSE_HOLD = 8;
+
+	private static final int PADDLE_MIN_LINES = 1;
+	private static final int PADDLE_MAX_LINES = 190;
+
+	private final int lanes;
+	private BatchCpu cpu;
+	private BatchPia pia;
+
+	private final int[] palette;
+	private final int height;
+	private final int maxLines;
+
+	// Whether the present frame is rendered, for every lane. Off until set
+	// (Batch.runFrame() sets it every frame), and the frames, a frame per
+	// lane, are only allocated once something is rendered.
+	private boolean render;
+	private int[] pixels;
+
+	// The scanline being drawn: color and object (PFO ordinal) of each pixel.
+	private final int[] lineColor, lineObj;
+
+	// Coverage masks of the line (see Tia) and the objects drawn on it.
+	private final long[] coverage;
+	private final int[] present;
+
+	// Beam.
+	private final int[] h, v;
+	private final int[] startLine;
+	private final long[] frames;
+
+	// Scanlines since power on, and color clock when the paddles were
+	// released.
+	private final long[] lines;
+	private final long[] dumpReleased;
+	private final int[] paddleClocks;
+
+	// Object counters.
+	private final int[] p0SizeCount, p1SizeCount, m0SizeCount, m1SizeCount,
+			blSizeCount;
+	private final int[] p0hMoveCnt, p1hMoveCnt, m0hMoveCnt, m1hMoveCnt,
+			blhMoveCnt;
+
+	private final int[] strobes;
+	private final int[] delayedDataP0, delayedDataP1, delayedDataB;
+
+	// Registers.
+	private final int[] mem;
+
+	// Audio channels, two per lane (see AudioChannel).
+	private final int[] audc, audf, audv;
+	private final int[] divCounter, pulseCounter, noiseCounter;
+	private final int[] audioFlags;
+
+	/**
+	 * @param lanes
+	 *            : The number of lanes.
+	 * @param standard
+	 *            : The TV standard, which sets the number of lines and the
+	 *            palette.
+	 */
+	public BatchTia(int lanes, TVStandard standard) {
+		this.lanes = lanes;
+
+		palette = standard.getPalette();
+		height = standard.getLines();
+		maxLines = standard.getLines() * 5 / 4;
+		render = false;
+
+		lineColor = new int[lanes * WIDTH];
+		lineObj = new int[lanes * WIDTH];
+		coverage = new long[lanes * COVERAGE];
+		present = new int[lanes];
+
+		h = new int[lanes];
+		v = new int[lanes];
+		startLine = new int[lanes];
+		frames = new long[lanes];
+		lines = new long[lanes];
+		dumpReleased = new long[lanes];
+		paddleClocks = new int[lanes * 4];
+
+		p0SizeCount = new int[lanes];
+		p1SizeCount = new int[lanes];
+		m0SizeCount = new int[lanes];
+		m1SizeCount = new int[lanes];
+		blSizeCount = new int[lanes];
+		p0hMoveCnt = new int[lanes];
+		p1hMoveCnt = new int[lanes];
+		m0hMoveCnt = new int[lanes];
+		m1hMoveCnt = new int[lanes];
+		blhMoveCnt = new int[lanes];
+
+		strobes = new int[lanes];
+		delayedDataP0 = new int[lanes];
+		delayedDataP1 = new int[lanes];
+		delayedDataB = new int[lanes];
+
+		mem = new int[lanes * REGS];
+
+		audc = new int[lanes * 2];
+		audf = new int[lanes * 2];
+		audv = new int[lanes * 2];
+		divCounter = new int[lanes * 2];
+		pulseCounter = new int[lanes * 2];
+		noiseCounter = new int[lanes * 2];
+		audioFlags = new int[lanes * 2];
+
+		Arrays.fill(startLine, -1);
+	}
+
+	/**
+	 * Writes in the TIA memory of a lane and executes strobe behavior if
+	 * necessary (see Tia.write()).
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param addr
+	 *            : The address to write to.
+	 * @param data
+	 *            : The data to write.
+	 */
+	public void write(int l, int addr, int data) {
+		int base = l * REGS;
+
+		switch (addr) {
+		case M.VSYNC:
+			boolean wasSyncing = vSyncing(l);
+
+			mem[base + addr] = data;
+
+			if (!wasSyncing && vSyncing(l)) {
+				endFrame(l, v[l], true);
+			}
+
+			break;
+
+		case M.VBLANK:
+			if ((mem[base + addr] & M.DUMP_PADDLES) != 0
+					&& (data & M.DUMP_PADDLES) == 0) {
+				dumpReleased[l] = clock(l);
+			}
+
+			mem[base + addr] = data;
+			break;
+
+		case M.WSYNC:
+			cpu.halt(l);
+			break;
+
+		case M.RSYNC:
+			h[l] = 0;
+			break;
+
+		case M.RESP0:
+			strobes[l] |= RESET_P0;
+			break;
+
+		case M.RESP1:
+			strobes[l] |= RESET_P1;
+			break;
+
+		case M.RESM0:
+			strobes[l] |= RESET_M0;
+			break;
+
+		case M.RESM1:
+			strobes[l] |= RESET_M1;
+			break;
+
+		case M.RESBL:
+			strobes[l] |= RESET_BL;
+			blSizeCount[l] = 1 << ((mem[base + M.CTRLPF] & M.BALL_SIZE) >> 4);
+			break;
+
+		case M.HMOVE:
+			strobes[l] |= HORIZ_MOVE;
+			break;
+
+		case M.HMCLR:
+			for (int i = M.HMP0; i <= M.HMBL; i++) {
+				mem[base + i] = 0;
+			}
+
+			break;
+
+		case M.CXCLR:
+			for (int i = M.CXM0P; i <= M.CXPPMM; i++) {
+				mem[base + i] = 0;
+			}
+
+			clearCoverage(l);
+			break;
+
+		case M.VDELP0:
+			mem[base + addr] = data;
+
+			if ((data & M.BIT_0) != 0) {
+				strobes[l] |= DELAY_P0;
+			}
+
+			break;
+
+		case M.VDELP1:
+			mem[base + addr] = data;
+
+			if ((data & M.BIT_0) != 0) {
+				strobes[l] |= DELAY_P1;
+			}
+
+			break;
+
+		case M.VDELBL:
+			mem[base + addr] = data;
+
+			if ((data & M.BIT_0) != 0) {
+				strobes[l] |= DELAY_B;
+			}
+
+			break;
+
+		case M.GRP0:
+			if ((strobes[l] & DELAY_P1) != 0) {
+				mem[base + M.GRP1] = delayedDataP1[l];
+				strobes[l] &= ~DELAY_P1;
+			}
+
+			if ((strobes[l] & DELAY_P0) == 0) {
+				mem[base + addr] = data;
+			}
+
+			break;
+
+		case M.GRP1:
+			if ((strobes[l] & DELAY_P0) != 0) {
+				mem[base + M.GRP0] = delayedDataP0[l];
+				strobes[l] &= ~DELAY_P0;
+			}
+
+			if ((strobes[l] & DELAY_B) != 0) {
+				mem[base + M.ENABL] = delayedDataB[l];
+				strobes[l] &= ~DELAY_B;
+			}
+
+			if ((strobes[l] & DELAY_P1) == 0) {
+				mem[base + addr] = data;
+			}
+
+			break;
+
+		case M.ENABL:
+			if ((strobes[l] & DELAY_B) == 0) {
+				mem[base + addr] = data;
+			}
+
+			break;
+
+		case M.AUDC0:
+		case M.AUDC1:
+			mem[base + addr] = data;
+			audc[l * 2 + addr - M.AUDC0] = data & 0x0F;
+			break;
+
+		case M.AUDF0:
+		case M.AUDF1:
+			mem[base + addr] = data;
+			audf[l * 2 + addr - M.AUDF0] = data & 0x1F;
+			break;
+
+		case M.AUDV0:
+		case M.AUDV1:
+			mem[base + addr] = data;
+			audv[l * 2 + addr - M.AUDV0] = data & 0x0F;
+			break;
+
+		default:
+			if (addr < M.CXM0P) {
+				mem[base + addr] = data;
+			}
+
+			break;
+		}
+	}
+
+	public int read(int l, int addr) {
+		int reg = M.CXM0P | (addr & 0x0F);
+
+		if (reg <= M.CXPPMM) {
+			foldCollisions(l);
+		} else if (reg <= M.INPT3) {
+			return readPaddle(l, reg - M.INPT0);
+		}
+
+		return mem[l * REGS + reg];
+	}
+
+	private int readPaddle(int l, int paddle) {
+		if ((mem[l * REGS + M.VBLANK] & M.DUMP_PADDLES) != 0) {
+			return 0;
+		}
+
+		return clock(l) - dumpReleased[l] >= paddleClocks[l * 4 + paddle] ? 0x80
+				: 0;
+	}
+
+	private long clock(int l) {
+		return lines[l] * WIDTH + h[l];
+	}
+
+	/**
+	 * Sets the position of a paddle of a lane (see Tia.setPaddle()).
+	 */
+	public void setPaddle(int l, int paddle, int position) {
+		int charge = PADDLE_MIN_LINES + position
+				* (PADDLE_MAX_LINES - PADDLE_MIN_LINES) / 255;
+
+		paddleClocks[l * 4 + paddle] = charge * WIDTH;
+	}
+
+	/**
+	 * Sets the level of an input port (INPT4 or INPT5) of a lane.
+	 */
+	public void setInputPort(int l, int port, int value) {
+		mem[l * REGS + port] = value & 0x80;
+	}
+
+	/**
+	 * Runs color clocks of a lane (see Tia.executeNext()).
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param clocks
+	 *            : The number of color clocks.
+	 */
+	public void clock(int l, int clocks) {
+		for (int i = 0; i < clocks; i++) {
+			executeNext(l);
+		}
+	}
+
+	private void executeNext(int l) {
+		int p = l * WIDTH + h[l];
+
+		if (vSyncing(l) || vBlanking(l)) {
+			if (render) {
+				lineColor[p] = BLACK;
+			}
+
+			lineObj[p] = BG;
+		} else {
+			if (render) {
+				lineColor[p] = hBlanking(l) ? BLACK : getColor(l, BG);
+			}
+
+			lineObj[p] = BG;
+
+			// Only one of the groups is drawn, as in Tia.
+			if ((mem[l * REGS + M.CTRLPF] & M.PLAYFIELD_BALL_PRIORITY) == 0) {
+				drawPlayfield(l, p);
+			} else {
+				drawPlayers(l, p);
+			}
+		}
+
+		updateBeam(l);
+	}
+
+	/**
+	 * Draws the playfield and the ball on a pixel (see Tia.drawPlayfield()).
+	 *
+	 * @param p
+	 *            : The index of the pixel in lineColor and lineObj.
+	 */
+	private void drawPlayfield(int l, int p) {
+		int base = l * REGS;
+		int hl = h[l];
+		int ctrlpf = mem[base + M.CTRLPF];
+
+		if (!hBlanking(l)) {
+			int pfReg, pfBit;
+
+			if (firstHalf(l)) {
+				if (hl < 84) {
+					pfReg = M.PF0;
+				} else if (hl < 116) {
+					pfReg = M.PF1;
+				} else {
+					pfReg = M.PF2;
+				}
+
+				pfBit = NORMAL_PF_BITS[hl - 68];
+			} else if ((ctrlpf & M.PLAYFIELD_REFLECTION) == 0) {
+				if (hl < 164) {
+					pfReg = M.PF0;
+				} else if (hl < 196) {
+					pfReg = M.PF1;
+				} else {
+					pfReg = M.PF2;
+				}
+
+				pfBit = NORMAL_PF_BITS[hl - 148];
+			} else {
+				if (hl < 180) {
+					pfReg = M.PF2;
+				} else if (hl < 212) {
+					pfReg = M.PF1;
+				} else {
+					pfReg = M.PF0;
+				}
+
+				pfBit = MIRRORED_PF_BITS[hl - 148];
+			}
+
+			if ((mem[base + pfReg] & pfBit) != 0) {
+				if (lineObj[p] <= PF) {
+					// Score mode paints each half with its player's color.
+					if ((ctrlpf & M.PLAYFIELD_BALL_PRIORITY) == 0
+							&& (ctrlpf & M.PLAYFIELD_COLOR) != 0) {
+						lineColor[p] = getColor(l, firstHalf(l) ? P0 : P1);
+					} else {
+						lineColor[p] = getColor(l, PF);
+					}
+
+					lineObj[p] = PF;
+				}
+
+				cover(l, PF, hl);
+			}
+		}
+
+		if ((strobes[l] & RESET_BL) != 0 && (mem[base + M.ENABL] & M.BIT_1) != 0) {
+			drawObject(l, p, BL, M.HMBL, blSizeCount, RESET_BL);
+		}
+	}
+
+	/**
+	 * Draws players and missiles on a pixel (see Tia.drawPlayers()).
+	 */
+	private void drawPlayers(int l, int p) {
+		int base = l * REGS;
+
+		if ((strobes[l] & RESET_M1) != 0 && (mem[base + M.ENAM1] & M.BIT_1) != 0) {
+			drawObject(l, p, M1, M.HMM1, m1SizeCount, RESET_M1);
+		}
+
+		if ((strobes[l] & RESET_P1) != 0 && (mem[base + M.GRP1] & M.BIT_1) != 0) {
+			drawObject(l, p, P1, M.HMP1, p1SizeCount, RESET_P1);
+		}
+
+		// Tia checks RESM1 here too.
+		if ((strobes[l] & RESET_M1) != 0 && (mem[base + M.ENAM0] & M.BIT_1) != 0) {
+			drawObject(l, p, M0, M.HMM0, m0SizeCount, RESET_M0);
+		}
+
+		if ((strobes[l] & RESET_P0) != 0 && (mem[base + M.GRP0] & M.BIT_1) != 0) {
+			drawObject(l, p, P0, M.HMP0, p0SizeCount, RESET_P0);
+		}
+	}
+
+	/**
+	 * Draws a movable object on a pixel, or on the pixel its motion moves it
+	 * to, the way Tia draws each of them.
+	 *
+	 * @param p
+	 *            : The index of the pixel in lineColor and lineObj.
+	 * @param obj
+	 *            : The object (PFO ordinal).
+	 * @param hmReg
+	 *            : Its motion register.
+	 * @param sizeCount
+	 *            : Its size counters.
+	 * @param reset
+	 *            : Its reset strobe, cleared once the counter runs out.
+	 */
+	private void drawObject(int l, int p, int obj, int hmReg, int[] sizeCount,
+			int reset) {
+		int hl = h[l];
+
+		if (sizeCount[l] <= 0) {
+			strobes[l] &= ~reset;
+			return;
+		}
+
+		if (!hBlanking(l)) {
+			if ((strobes[l] & HORIZ_MOVE) != 0) {
+				int hm = getHM(l, hmReg);
+
+				if (hm == 0) {
+					if (lineObj[p] <= obj) {
+						lineColor[p] = getColor(l, obj);
+						lineObj[p] = obj;
+					}
+
+					cover(l, obj, hl);
+				} else {
+					int pos = hl + hm;
+					int outer = l * WIDTH + Objects.checkIndex(pos, WIDTH);
+
+					if (lineObj[outer] <= obj) {
+						lineColor[outer] = getColor(l, obj);
+						lineObj[outer] = obj;
+					}
+
+					cover(l, obj, pos);
+				}
+			} else if (lineObj[p] <= obj) {
+				lineColor[p] = getColor(l, obj);
+				lineObj[p] = obj;
+			}
+		} else {
+			// Reset during the blank: drawn at the left edge plus 2 pixels.
+			int pos = 68 - hl + 2;
+			int outer = l * WIDTH + pos;
+
+			lineColor[outer] = getColor(l, obj);
+			cover(l, obj, pos);
+			lineObj[outer] = obj;
+		}
+
+		cover(l, obj, hl);
+		sizeCount[l]--;
+	}
+
+	// Beam control -----------------------------------------------
+
+	private void updateBeam(int l) {
+		if (h[l] == 227) {
+			foldCollisions(l);
+			clearCoverage(l);
+			flushLine(l);
+			h[l] = 0;
+			lines[l]++;
+			cpu.resume(l);
+			clockAudio(l);
+
+			if (startLine[l] < 0 && !vBlanking(l) && !vSyncing(l)) {
+				startLine[l] = v[l];
+			}
+
+			if (v[l] == maxLines - 1) {
+				endFrame(l, maxLines, false);
+			} else {
+				v[l]++;
+			}
+		} else {
+			h[l]++;
+		}
+	}
+
+	/**
+	 * Finishes the present frame of a lane. Lines that were not drawn are
+	 * cleared, as in Tia.
+	 */
+	private void endFrame(int l, int count, boolean vsync) {
+		frames[l]++;
+
+		if (render) {
+			int drawn = Math.min(count, height);
+
+			Arrays.fill(pixels, (l * height + drawn) * WIDTH, (l + 1) * height
+					* WIDTH, BLACK);
+		}
+
+		v[l] = 0;
+		startLine[l] = -1;
+	}
+
+	private void flushLine(int l) {
+		if (render && v[l] < height) {
+			System.arraycopy(lineColor, l * WIDTH, pixels, (l * height + v[l])
+					* WIDTH, WIDTH);
+		}
+	}
+
+	// Audio ------------------------------------------------------
+
+	/**
+	 * Clocks both audio channels of a lane for a whole scanline (see
+	 * Tia.clockAudio()). The levels are not kept.
+	 */
+	private void clockAudio(int l) {
+		for (int i = 0; i < 2; i++) {
+			phase0(l * 2);
+			phase0(l * 2 + 1);
+			phase1(l * 2);
+			phase1(l * 2 + 1);
+		}
+	}
+
+	/**
+	 * First phase of an audio clock (see AudioChannel.phase0()).
+	 *
+	 * @param c
+	 *            : The channel, two per lane.
+	 */
+	private void phase0(int c) {
+		int flags = audioFlags[c];
+		int noise = noiseCounter[c];
+		int pulse = pulseCounter[c];
+		int control = audc[c];
+
+		if ((flags & CLOCK_ENABLE) != 0) {
+			boolean bit4 = (noise & 0x01) != 0;
+			boolean hold;
+			boolean feedback;
+
+			switch (control & 0x03) {
+			case 0x02:
+				hold = (noise & 0x1E) != 0x02;
+				break;
+
+			case 0x03:
+				hold = !bit4;
+				break;
+
+			default:
+				hold = false;
+				break;
+			}
+
+			if ((control & 0x03) == 0) {
+				feedback = ((pulse ^ noise) & 0x01) != 0
+						|| !(noise != 0 || pulse != 0x0A)
+						|| (control & 0x0C) == 0;
+			} else {
+				feedback = (((noise & 0x04) >> 2) ^ (noise & 0x01)) != 0
+						|| noise == 0;
+			}
+
+			flags = (flags & CLOCK_ENABLE) | (feedback ? NOISE_FEEDBACK : 0)
+					| (bit4 ? NOISE_BIT4 : 0) | (hold ? PULSE_HOLD : 0);
+		}
+
+		if (divCounter[c] == audf[c]) {
+			flags |= CLOCK_ENABLE;
+		} else {
+			flags &= ~CLOCK_ENABLE;
+		}
+
+		if (divCounter[c] == audf[c] || divCounter[c] == 0x1F) {
+			divCounter[c] = 0;
+		} else {
+			divCounter[c]++;
+		}
+
+		audioFlags[c] = flags;
+	}
+
+	/**
+	 * Second phase of an audio clock (see AudioChannel.phase1()).
+	 */
+	private void phase1(int c) {
+		int flags = audioFlags[c];
+
+		if ((flags & CLOCK_ENABLE) != 0) {
+			int pulse = pulseCounter[c];
+			int control = audc[c];
+			boolean pulseFeedback;
+
+			switch (control >> 2) {
+			case 0x00:
+				pulseFeedback = (((pulse & 0x02) >> 1) ^ (pulse & 0x01)) != 0
+						&& pulse != 0x0A && (control & 0x03) != 0;
+				break;
+
+			case 0x01:
+				pulseFeedback = (pulse & 0x08) == 0;
+				break;
+
+			case 0x02:
+				pulseFeedback = (flags & NOISE_BIT4) == 0;
+				break;
+
+			default:
+				pulseFeedback = !((pulse & 0x02) != 0 || (pulse & 0x0E) == 0);
+				break;
+			}
+
+			noiseCounter[c] >>= 1;
+
+			if ((flags & NOISE_FEEDBACK) != 0) {
+				noiseCounter[c] |= 0x10;
+			}
+
+			if ((flags & PULSE_HOLD) == 0) {
+				pulse = ~(pulse >> 1) & 0x07;
+
+				if (pulseFeedback) {
+					pulse |= 0x08;
+				}
+
+				pulseCounter[c] = pulse;
+			}
+		}
+	}
+
+	// State of the beam ------------------------------------------
+
+	private boolean vSyncing(int l) {
+		return (mem[l * REGS + M.VSYNC] & M.VERTICAL_SYNC) != 0;
+	}
+
+	private boolean vBlanking(int l) {
+		return (mem[l * REGS + M.VBLANK] & M.VERTICAL_BLANK) != 0;
+	}
+
+	private boolean hBlanking(int l) {
+		return h[l] < 68;
+	}
+
+	private boolean firstHalf(int l) {
+		return h[l] >= 68 && h[l] < 148;
+	}
+
+	// Register-related -----------------------------------------
+
+	private void cover(int l, int obj, int pos) {
+		coverage[l * COVERAGE + obj * 4 + (pos >> 6)] |= 1L << pos;
+		present[l] |= 1 << obj;
+	}
+
+	/**
+	 * Sets the collision latches of a lane (see Tia.foldCollisions()).
+	 */
+	private void foldCollisions(int l) {
+		int drawn = present[l];
+
+		if ((drawn & (drawn - 1)) == 0) {
+			return;
+		}
+
+		int cov = l * COVERAGE;
+
+		for (int i = 0; i < PAIRS.length; i++) {
+			int pair = PAIRS[i];
+
+			if ((drawn & pair) != pair) {
+				continue;
+			}
+
+			int a = cov + Integer.numberOfTrailingZeros(pair) * 4;
+			int b = cov + (31 - Integer.numberOfLeadingZeros(pair)) * 4;
+
+			if (((coverage[a] & coverage[b])
+					| (coverage[a + 1] & coverage[b + 1])
+					| (coverage[a + 2] & coverage[b + 2])
+					| (coverage[a + 3] & coverage[b + 3])) != 0) {
+				mem[l * REGS + PAIR_REGS[i]] |= PAIR_BITS[i];
+			}
+		}
+	}
+
+	private void clearCoverage(int l) {
+		if (present[l] != 0) {
+			Arrays.fill(coverage, l * COVERAGE, (l + 1) * COVERAGE, 0);
+			present[l] = 0;
+		}
+	}
+
+	/**
+	 * Gets the horizontal motion of a register, as Tia.getHM() works it out.
+	 */
+	private int getHM(int l, int reg) {
+		int hm = (mem[l * REGS + reg] & 0xF0) >> 4;
+
+		if ((hm & 0x8) != 0) {
+			if ((hm & 0x7) == 0) {
+				hm = -8;
+			} else {
+				hm = ~hm + 1;
+			}
+		}
+
+		return hm;
+	}
+
+	/**
+	 * Gets the ARGB color of an object (see Tia.getColor()).
+	 */
+	private int getColor(int l, int obj) {
+		int base = l * REGS;
+		int c;
+
+		if (!render) {
+			return 0;
+		}
+
+		if (obj == P0 || obj == M0) {
+			c = mem[base + M.COLUP0];
+		} else if (obj == P1 || obj == M1) {
+			c = mem[base + M.COLUP1];
+		} else if (obj == BL || obj == PF) {
+			c = mem[base + M.COLUPF];
+		} else {
+			c = mem[base + M.COLUBK];
+		}
+
+		if ((pia.getSwchb(l) & M.COLOR_SWITCH) == 0) {
+			return palette[(c >> 1) & 0x7];
+		} else {
+			return palette[c >> 1];
+		}
+	}
+
+	// Save states ----------------------------------------------
+
+	/**
+	 * Writes the state of a lane as Tia.saveState() does.
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param buf
+	 *            : The buffer to write to.
+	 */
+	public void saveState(int l, ByteBuffer buf) {
+		buf.putShort((short) h[l]);
+		buf.putShort((short) v[l]);
+		buf.putShort((short) startLine[l]);
+		buf.putLong(frames[l]);
+		buf.putLong(lines[l]);
+		buf.putLong(dumpReleased[l]);
+
+		buf.put((byte) p0SizeCount[l]);
+		buf.put((byte) p1SizeCount[l]);
+		buf.put((byte) m0SizeCount[l]);
+		buf.put((byte) m1SizeCount[l]);
+		buf.put((byte) blSizeCount[l]);
+		buf.put((byte) p0hMoveCnt[l]);
+		buf.put((byte) p1hMoveCnt[l]);
+		buf.put((byte) m0hMoveCnt[l]);
+		buf.put((byte) m1hMoveCnt[l]);
+		buf.put((byte) blhMoveCnt[l]);
+
+		buf.putShort((short) strobes[l]);
+		buf.put((byte) delayedDataP0[l]);
+		buf.put((byte) delayedDataP1[l]);
+		buf.put((byte) delayedDataB[l]);
+
+		for (int i = 0; i < REGS; i++) {
+			buf.put((byte) mem[l * REGS + i]);
+		}
+
+		for (int i = 0; i < COVERAGE; i++) {
+			buf.putLong(coverage[l * COVERAGE + i]);
+		}
+
+		buf.put((byte) present[l]);
+
+		for (int c = l * 2; c < l * 2 + 2; c++) {
+			buf.put((byte) audc[c]);
+			buf.put((byte) audf[c]);
+			buf.put((byte) audv[c]);
+			buf.put((byte) divCounter[c]);
+			buf.put((byte) pulseCounter[c]);
+			buf.put((byte) noiseCounter[c]);
+			buf.put((byte) audioFlags[c]);
+		}
+	}
+
+	/**
+	 * Reads the state of a lane written by saveState() or Tia.saveState().
+	 *
+	 * @param l
+	 *            : The lane.
+	 * @param buf
+	 *            : The buffer to read from.
+	 */
+	public void loadState(int l, ByteBuffer buf) {
+		h[l] = buf.getShort();
+		v[l] = buf.getShort();
+		startLine[l] = buf.getShort();
+		frames[l] = buf.getLong();
+		lines[l] = buf.getLong();
+		dumpReleased[l] = buf.getLong();
+
+		p0SizeCount[l] = buf.get();
+		p1SizeCount[l] = buf.get();
+		m0SizeCount[l] = buf.get();
+		m1SizeCount[l] = buf.get();
+		blSizeCount[l] = buf.get();
+		p0hMoveCnt[l] = buf.get();
+		p1hMoveCnt[l] = buf.get();
+		m0hMoveCnt[l] = buf.get();
+		m1hMoveCnt[l] = buf.get();
+		blhMoveCnt[l] = buf.get();
+
+		strobes[l] = buf.getShort() & 0x1FF;
+		delayedDataP0[l] = buf.get() & 0xFF;
+		delayedDataP1[l] = buf.get() & 0xFF;
+		delayedDataB[l] = buf.get() & 0xFF;
+
+		for (int i = 0; i < REGS; i++) {
+			mem[l * REGS + i] = buf.get() & 0xFF;
+		}
+
+		for (int i = 0; i < COVERAGE; i++) {
+			coverage[l * COVERAGE + i] = buf.getLong();
+		}
+
+		present[l] = buf.get();
+
+		for (int c = l * 2; c < l * 2 + 2; c++) {
+			audc[c] = buf.get();
+			audf[c] = buf.get();
+			audv[c] = buf.get();
+			divCounter[c] = buf.get();
+			pulseCounter[c] = buf.get();
+			noiseCounter[c] = buf.get();
+			audioFlags[c] = buf.get() & 0x0F;
+		}
+	}
+
+	// Setters & getters --------------------------------
+
+	public BatchCpu getCpu() {
+		return cpu;
+	}
+
+	public void setCpu(BatchCpu cpu) {
+		this.cpu = cpu;
+	}
+
+	public BatchPia getPia() {
+		return pia;
+	}
+
+	public void setPia(BatchPia pia) {
+		this.pia = pia;
+	}
+
+	public boolean getRender() {
+		return render;
+	}
+
+	/**
+	 * Sets whether the frames being drawn are rendered. Should only be
+	 * changed between frames.
+	 *
+	 * @param render
+	 *            : False to skip color resolution.
+	 */
+	public void setRender(boolean render) {
+		this.render = render;
+
+		if (render && pixels == null) {
+			pixels = new int[lanes * height * WIDTH];
+		}
+	}
+
+	/**
+	 * @return The last frame rendered by every lane, one after another, each
+	 *         laid out as TVFrame.getPixels(); null if nothing was rendered
+	 *         yet. It is not a copy.
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * @return The number of lines of each frame in getPixels().
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	public long getFrameCount(int l) {
+		return frames[l];
+	}
+
+	// Opaque black, for blanking.
+	private static final int BLACK = 0xFF000000;
+
+	// The 15 pairs of objects and the latch and bit each one sets (see Tia).
+	private static final int[] PAIRS = { pair(M0, P1), pair(M0, P0),
+			pair(M1, P0), pair(M1, P1), pair(P0, PF), pair(P0, BL),
+			pair(P1, PF), pair(P1, BL), pair(M0, PF), pair(M0, BL),
+			pair(M1, PF), pair(M1, BL), pair(BL, PF), pair(P0, P1),
+			pair(M0, M1) };
+
+	private static final int[] PAIR_REGS = { M.CXM0P, M.CXM0P, M.CXM1P,
+			M.CXM1P, M.CXP0FB, M.CXP0FB, M.CXP1FB, M.CXP1FB, M.CXM0FB,
+			M.CXM0FB, M.CXM1FB, M.CXM1FB, M.CXBLPF, M.CXPPMM, M.CXPPMM };
+
+	private static final int[] PAIR_BITS = { M.BIT_7, M.BIT_6, M.BIT_7,
+			M.BIT_6, M.BIT_7, M.BIT_6, M.BIT_7, M.BIT_6, M.BIT_7, M.BIT_6,
+			M.BIT_7, M.BIT_6, M.BIT_7, M.BIT_7, M.BIT_6 };
+
+	private static int pair(int a, int b) {
+		return (1 << a) | (1 << b);
+	}
+
+	// Playfield bit of each pixel of a half of the line (see Tia).
+	private static final int[] NORMAL_PF_BITS = { M.BIT_4, M.BIT_4, M.BIT_4,
+			M.BIT_4, M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_6, M.BIT_6,
+			M.BIT_6, M.BIT_6, M.BIT_7, M.BIT_7, M.BIT_7, M.BIT_7, M.BIT_7,
+			M.BIT_7, M.BIT_7, M.BIT_7, M.BIT_6, M.BIT_6, M.BIT_6, M.BIT_6,
+			M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_4, M.BIT_4, M.BIT_4,
+			M.BIT_4, M.BIT_3, M.BIT_3, M.BIT_3, M.BIT_3, M.BIT_2, M.BIT_2,
+			M.BIT_2, M.BIT_2, M.BIT_1, M.BIT_1, M.BIT_1, M.BIT_1, M.BIT_0,
+			M.BIT_0, M.BIT_0, M.BIT_0, M.BIT_0, M.BIT_0, M.BIT_0, M.BIT_0,
+			M.BIT_1, M.BIT_1, M.BIT_1, M.BIT_1, M.BIT_2, M.BIT_2, M.BIT_2,
+			M.BIT_2, M.BIT_3, M.BIT_3, M.BIT_3, M.BIT_3, M.BIT_4, M.BIT_4,
+			M.BIT_4, M.BIT_4, M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_6,
+			M.BIT_6, M.BIT_6, M.BIT_6, M.BIT_7, M.BIT_7, M.BIT_7, M.BIT_7 };
+
+	private static final int[] MIRRORED_PF_BITS = { M.BIT_7, M.BIT_7,
+			M.BIT_7, M.BIT_7, M.BIT_6, M.BIT_6, M.BIT_6, M.BIT_6, M.BIT_5,
+			M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_4, M.BIT_4, M.BIT_4, M.BIT_4,
+			M.BIT_3, M.BIT_3, M.BIT_3, M.BIT_3, M.BIT_2, M.BIT_2, M.BIT_2,
+			M.BIT_2, M.BIT_1, M.BIT_1, M.BIT_1, M.BIT_1, M.BIT_0, M.BIT_0,
+			M.BIT_0, M.BIT_0, M.BIT_0, M.BIT_0, M.BIT_0, M.BIT_0, M.BIT_1,
+			M.BIT_1, M.BIT_1, M.BIT_1, M.BIT_2, M.BIT_2, M.BIT_2, M.BIT_2,
+			M.BIT_3, M.BIT_3, M.BIT_3, M.BIT_3, M.BIT_4, M.BIT_4, M.BIT_4,
+			M.BIT_4, M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_6, M.BIT_6,
+			M.BIT_6, M.BIT_6, M.BIT_7, M.BIT_7, M.BIT_7, M.BIT_7, M.BIT_7,
+			M.BIT_7, M.BIT_7, M.BIT_7, M.BIT_6, M.BIT_6, M.BIT_6, M.BIT_6,
+			M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_5, M.BIT_4, M.BIT_4, M.BIT_4,
+			M.BIT_4 };
+
+}
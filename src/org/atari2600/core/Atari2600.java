@@ -1,15 +1,104 @@
 package org.atari2600.core;
 
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.atari2600.audio.Speaker;
+import org.atari2600.input.Input;
+import org.atari2600.input.InputLatch;
+import org.atari2600.input.InputTimeline;
 import org.atari2600.tv.TV;
+import org.atari2600.tv.TVStandard;
+import org.atari2600.util.M;
 
 public class Atari2600 {
 	private Cpu cpu;
 	private Cartridge cart;
 	private TV tv;
+	private Speaker speaker;
+	private TVStandard standard;
+	private Governor governor;
+
+	// Fast-forward mode: no pacing, and only one of every frameSkip + 1
+	// frames is rendered. May be changed from other threads at any time; it
+	// is only read between frames.
+	private volatile boolean fastForward;
+	private volatile int frameSkip;
+	private int skipped;
+
+	// RAM-only mode: frames are emulated but never colored nor output.
+	private volatile boolean ramOnly;
+
+	// CPU cycles executed since boot. Part of the state, so it keys inputs.
+	private long cycles;
+
+	// Input word applied to the ports, and where it is being recorded to or
+	// replayed from. While replaying, inputs are applied after the first
+	// instruction that ends at or after nextInputCycle, as they were when
+	// recorded between instructions.
+	private long input;
+	private InputTimeline recording, replay;
+	private int replayPos;
+	private long nextInputCycle;
+
+	// Where the input comes from when playing live. Sampled once per frame.
+	private InputLatch latch;
+
+	// Run-ahead: frames emulated past the real one to show the effect of the
+	// input sooner, and the buffer where the real state is kept meanwhile.
+	private volatile int runAhead;
+	private ByteBuffer aheadState;
+
+	// Snapshots for rewinding, taken after each frame if set.
+	private Rewind rewind;
+
+	// Counters for monitoring, published at the end of every frame.
+	private Metrics metrics;
+
+	// Buffer used to copy the state into forks. Created on the first fork.
+	private ByteBuffer forkState;
+
+	// Set by release(), cleared when fork() hands the instance out again.
+	private boolean released;
+
+	// Released instances, ready to be reused by fork(). One pool per
+	// standard, since instances of another standard have frames of another
+	// size. Filled in once, then only read.
+	private static final EnumMap<TVStandard, ConcurrentLinkedQueue<Atari2600>> pools = new EnumMap<>(
+			TVStandard.class);
+
+	static {
+		for (TVStandard standard : TVStandard.values()) {
+			pools.put(standard, new ConcurrentLinkedQueue<>());
+		}
+	}
 
 	public Atari2600(Cartridge cart, TV tv) {
+		this(cart, tv, null);
+	}
+
+	public Atari2600(Cartridge cart, TV tv, Speaker speaker) {
+		this(cart, tv, speaker, TVStandard.NTSC);
+	}
+
+	/**
+	 * @param cart
+	 *            : The cartridge to play.
+	 * @param tv
+	 *            : The TV the frames are sent to (may be null).
+	 * @param speaker
+	 *            : The speaker the sound is sent to (may be null).
+	 * @param standard
+	 *            : The TV standard of the cartridge. Sets the frame size, the
+	 *            palette and the speed.
+	 */
+	public Atari2600(Cartridge cart, TV tv, Speaker speaker,
+			TVStandard standard) {
 		this.cart = cart;
 		this.tv = tv;
+		this.speaker = speaker;
+		this.standard = standard;
 
 		initialize();
 	}
@@ -18,22 +107,259 @@ public class Atari2600 {
 	 * Boots the system and starts execution loop.
 	 */
 	public void on() {
-		int cycles;
 		// Boot routine
 		cpu.boot();
 
-		// Execute
+		// Execute, one frame at a time at the speed set by the governor.
 		while (true) {
-			cycles = cpu.executeNext();
-			
-			for (int i = 0; i < cycles * 3; i++) {
-				cpu.getMemory().getTia().executeNext();
+			advance();
+
+			if (!fastForward) {
+				governor.pace();
 			}
-			
-			cpu.getMemory().getPia().getIo().updateTimer(cycles);
-			cpu.getMemory().commit();
+		}
+	}
+
+	/**
+	 * Runs the next frame the way on() does, with run-ahead or frame skipping
+	 * as currently set, but without pacing. For callers that drive the machine
+	 * on their own schedule (see Fleet).
+	 */
+	public void advance() {
+		if (runAhead > 0 && !fastForward) {
+			runFrameAhead();
+		} else {
+			runFrame();
+		}
+	}
+
+	/**
+	 * Executes instructions until the TIA finishes a frame. When fast
+	 * forwarding, the frame may be skipped: it is emulated exactly the same,
+	 * but it is neither colored nor sent to the TV.
+	 */
+	public void runFrame() {
+		boolean render = !fastForward || skipped >= frameSkip;
+
+		skipped = render ? 0 : skipped + 1;
+
+		if (!render) {
+			metrics.skipped();
+		}
+
+		runFrame(render);
+	}
+
+	/**
+	 * Runs a frame with run-ahead: the frame is emulated but not shown, and
+	 * then the next runAhead frames are emulated with the same input, the last
+	 * one is shown, and the machine goes back to the end of the first frame.
+	 * What is seen is a few frames in the future, so the input shows up on
+	 * screen that many frames sooner. Sound comes from the real frame only.
+	 */
+	public void runFrameAhead() {
+		Tia tia = cpu.getMemory().getTia();
+
+		runFrame(false);
+
+		if (aheadState == null) {
+			aheadState = ByteBuffer.allocateDirect(STATE_SIZE);
+		}
+
+		aheadState.clear();
+		saveState(aheadState);
+
+		tia.setSpeaker(null);
+
+		for (int i = 1; i <= runAhead; i++) {
+			tia.setRender(i == runAhead && !ramOnly);
+			emulateFrame();
+			metrics.speculative(i == runAhead && !ramOnly);
+		}
+
+		tia.setSpeaker(speaker);
+
+		aheadState.flip();
+		loadState(aheadState);
+	}
+
+	/**
+	 * Runs a frame of the real timeline: takes the input, emulates the frame
+	 * and feeds the rewind buffer. Fast-forward settings are not used.
+	 * 
+	 * @param render
+	 *            : True to color the frame and send it to the TV.
+	 */
+	public void runFrame(boolean render) {
+		cpu.getMemory().getTia().setRender(render && !ramOnly);
+
+		if (latch != null) {
+			setInput(latch.sample());
+		}
+
+		long start = cycles;
+		long halted = cpu.getHaltedCycles();
+
+		emulateFrame();
+
+		metrics.frame(cycles - start, cpu.getHaltedCycles() - halted,
+				render && !ramOnly);
 
-			//waitFor(cycles);
+		if (rewind != null) {
+			rewind.frame();
+		}
+	}
+
+	/**
+	 * Executes instructions until the TIA finishes a frame.
+	 */
+	private void emulateFrame() {
+		Tia tia = cpu.getMemory().getTia();
+		long frame = tia.getFrameCount();
+
+		while (tia.getFrameCount() == frame) {
+			step();
+		}
+	}
+
+	/**
+	 * Executes a single instruction, with the TIA color clocks and PIA timer
+	 * cycles that go with it.
+	 * 
+	 * @return The number of CPU cycles executed.
+	 */
+	public int step() {
+		int cycles = cpu.executeNext();
+
+		for (int i = 0; i < cycles * 3; i++) {
+			cpu.getMemory().getTia().executeNext();
+		}
+
+		cpu.getMemory().getPia().getIo().updateTimer(cycles);
+		cpu.getMemory().commit();
+		this.cycles += cycles;
+
+		if (this.cycles >= nextInputCycle) {
+			replayInput();
+		}
+
+		return cycles;
+	}
+
+	// Input ------------------------------------------------------
+
+	/**
+	 * Changes the input, which takes effect from the next instruction on. It
+	 * is ignored while replaying.
+	 * 
+	 * @param input
+	 *            : The new input word (see {@link Input}).
+	 */
+	public void setInput(long input) {
+		if (isReplaying() || input == this.input) {
+			return;
+		}
+
+		applyInput(input);
+
+		if (recording != null) {
+			recording.record(getFrameCount(), cycles, input);
+		}
+	}
+
+	public long getInput() {
+		return input;
+	}
+
+	public InputLatch getInputLatch() {
+		return latch;
+	}
+
+	/**
+	 * Sets the latch the input is taken from, at the start of every frame.
+	 * 
+	 * @param latch
+	 *            : The input latch, or null to only take input from setInput.
+	 */
+	public void setInputLatch(InputLatch latch) {
+		this.latch = latch;
+	}
+
+	/**
+	 * Starts recording every input change into the timeline, from this point.
+	 * 
+	 * @param timeline
+	 *            : The timeline to record to, or null to stop recording.
+	 */
+	public void record(InputTimeline timeline) {
+		recording = timeline;
+
+		if (timeline != null) {
+			timeline.begin(getFrameCount(), cycles, input);
+		}
+	}
+
+	/**
+	 * Starts replaying a timeline. The machine must be in the state where the
+	 * recording started (just booted, or a state saved at that point).
+	 * 
+	 * @param timeline
+	 *            : The timeline to replay.
+	 * @throws IllegalArgumentException
+	 *             If the timeline didn't start at this point.
+	 */
+	public void replay(InputTimeline timeline) {
+		if (timeline.getStartCycle() != cycles
+				|| timeline.getStartFrame() != getFrameCount()) {
+			throw new IllegalArgumentException(
+					"The timeline starts at another point");
+		}
+
+		replay = timeline;
+		replayPos = 0;
+		applyInput(timeline.getStartInput());
+		replayInput();
+	}
+
+	public boolean isReplaying() {
+		return replay != null && replayPos < replay.size();
+	}
+
+	/**
+	 * Applies the replayed inputs that are due, and schedules the next one.
+	 */
+	private void replayInput() {
+		while (replayPos < replay.size()
+				&& replay.getCycle(replayPos) <= cycles) {
+			if (replay.getFrame(replayPos) != getFrameCount()) {
+				throw new IllegalStateException("Replay out of sync at cycle "
+						+ cycles);
+			}
+
+			applyInput(replay.getInput(replayPos++));
+		}
+
+		if (replayPos < replay.size()) {
+			nextInputCycle = replay.getCycle(replayPos);
+		} else {
+			// Done: the input can be changed again. The timeline is kept in
+			// case an earlier state is loaded.
+			nextInputCycle = Long.MAX_VALUE;
+		}
+	}
+
+	private void applyInput(long input) {
+		Memory memory = cpu.getMemory();
+
+		this.input = input;
+
+		memory.getPia().getIo().setSwcha(Input.swcha(input));
+		memory.getPia().getIo().setSwchb(Input.swchb(input));
+		memory.getTia().setInputPort(M.INPT4, Input.inpt4(input));
+		memory.getTia().setInputPort(M.INPT5, Input.inpt5(input));
+
+		for (int i = 0; i < 4; i++) {
+			memory.getTia().setPaddle(i, Input.paddle(input, i));
 		}
 	}
 
@@ -41,7 +367,7 @@ public class Atari2600 {
 		Cpu cpu = new Cpu();
 
 		Memory memory = new Memory();
-		Tia tia = new Tia();
+		Tia tia = new Tia(standard);
 		Pia pia = new Pia();
 		Ram ram = new Ram();
 		IOTimer io = new IOTimer();
@@ -55,21 +381,25 @@ public class Atari2600 {
 		tia.setCpu(cpu);
 		tia.setPia(pia);
 		tia.setTv(tv);
+		tia.setSpeaker(speaker);
 
 		pia.setIo(io);
 		pia.setRam(ram);
 
 		this.cpu = cpu;
-	}
-	
-	private void waitFor(int cycles) {
-		long start;
-		
-		for (int i = 0; i < cycles; i++) {
-			start = System.nanoTime();
-			
-			//while(System.nanoTime() - start < 25);
+
+		cycles = 0;
+		nextInputCycle = Long.MAX_VALUE;
+		applyInput(Input.DEFAULT);
+
+		if (speaker != null) {
+			speaker.setInputRate(standard.getAudioRate());
 		}
+
+		governor = new Governor(standard.getFrameRate());
+		governor.setSpeaker(speaker);
+
+		metrics = new Metrics(standard.getColorClock() / 3);
 	}
 
 	public Cpu getCpu() {
@@ -80,6 +410,299 @@ public class Atari2600 {
 		this.cpu = cpu;
 	}
 
+	public boolean isFastForward() {
+		return fastForward;
+	}
+
+	/**
+	 * Turns the fast-forward mode on or off. When on, the machine runs as fast
+	 * as possible and skips frames according to the frame skip ratio. The
+	 * emulated state is the same with or without it.
+	 * 
+	 * @param fastForward
+	 *            : True to run unthrottled.
+	 */
+	public void setFastForward(boolean fastForward) {
+		this.fastForward = fastForward;
+	}
+
+	public int getFrameSkip() {
+		return frameSkip;
+	}
+
+	/**
+	 * Sets how many frames are skipped after each rendered frame when fast
+	 * forwarding. 0 renders every frame.
+	 * 
+	 * @param frameSkip
+	 *            : The number of frames to skip.
+	 */
+	public void setFrameSkip(int frameSkip) {
+		this.frameSkip = Math.max(0, frameSkip);
+	}
+
+	// Save states ------------------------------------------------
+
+	// Header of every state: magic number and format version.
+	public static final int STATE_MAGIC = 0x41323653; // "A26S"
+	public static final byte STATE_VERSION = 3;
+
+	/**
+	 * Number of bytes written by saveState.
+	 */
+	public static final int STATE_SIZE = 21 + Cpu.STATE_SIZE
+			+ Memory.STATE_SIZE + Ram.STATE_SIZE + IOTimer.STATE_SIZE
+			+ Tia.STATE_SIZE;
+
+	/**
+	 * Writes the whole state of the machine (CPU, RAM, TIA, PIA timer, pending
+	 * memory write, cycle count and input) at the buffer's position. Nothing
+	 * is allocated. The cartridge is not included, since it is read only and
+	 * has no banks.
+	 * 
+	 * @param buf
+	 *            : The buffer to write to. Must have at least STATE_SIZE
+	 *            bytes remaining.
+	 */
+	public void saveState(ByteBuffer buf) {
+		Memory memory = cpu.getMemory();
+
+		buf.putInt(STATE_MAGIC);
+		buf.put(STATE_VERSION);
+		buf.putLong(cycles);
+		buf.putLong(input);
+
+		cpu.saveState(buf);
+		memory.saveState(buf);
+		memory.getPia().getRam().saveState(buf);
+		memory.getPia().getIo().saveState(buf);
+		memory.getTia().saveState(buf);
+	}
+
+	/**
+	 * Restores a state written by saveState, reading from the buffer's
+	 * position.
+	 * 
+	 * @param buf
+	 *            : The buffer to read from.
+	 * @throws IllegalArgumentException
+	 *             If the buffer does not hold a state of this version.
+	 */
+	public void loadState(ByteBuffer buf) {
+		Memory memory = cpu.getMemory();
+
+		if (buf.getInt() != STATE_MAGIC) {
+			throw new IllegalArgumentException("Not a saved state");
+		}
+
+		if (buf.get() != STATE_VERSION) {
+			throw new IllegalArgumentException("Unsupported state version");
+		}
+
+		cycles = buf.getLong();
+		input = buf.getLong();
+
+		cpu.loadState(buf);
+		memory.loadState(buf);
+		memory.getPia().getRam().loadState(buf);
+		memory.getPia().getIo().loadState(buf);
+		memory.getTia().loadState(buf);
+
+		// The paddle charge times are derived from the input.
+		applyInput(input);
+
+		if (replay != null) {
+			// Carry on replaying from the loaded point.
+			replayPos = 0;
+
+			while (replayPos < replay.size()
+					&& replay.getCycle(replayPos) < cycles) {
+				replayPos++;
+			}
+
+			replayInput();
+		}
+	}
+
+	// Forks ------------------------------------------------------
+
+	/**
+	 * Creates a copy of the machine, for example to try different inputs from
+	 * the same point. The copy is taken from the pool of released instances if
+	 * possible, so its components are reused instead of wired again, and it
+	 * shares the cartridge with this machine. It has no TV nor speaker.
+	 * 
+	 * @return A machine in the same state as this one.
+	 */
+	public Atari2600 fork() {
+		Atari2600 child = pools.get(standard).poll();
+
+		if (child == null) {
+			child = new Atari2600(cart, null, null, standard);
+		} else {
+			child.released = false;
+			child.cart = cart;
+			child.cpu.getMemory().setCartridge(cart);
+			child.metrics.reset();
+		}
+
+		if (forkState == null) {
+			forkState = ByteBuffer.allocateDirect(STATE_SIZE);
+		}
+
+		forkState.clear();
+		saveState(forkState);
+		forkState.flip();
+		child.loadState(forkState);
+
+		child.recording = null;
+		child.replay = null;
+		child.nextInputCycle = Long.MAX_VALUE;
+		child.fastForward = fastForward;
+		child.frameSkip = frameSkip;
+		child.skipped = skipped;
+
+		return child;
+	}
+
+	/**
+	 * Gives the machine back to the pool used by fork(). It must not be used
+	 * afterwards. Everything set by its owner is put back as in a new machine,
+	 * so the next fork does not inherit its input, rewind buffer or modes.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the machine was already released.
+	 */
+	public void release() {
+		if (released) {
+			throw new IllegalStateException("Machine already released");
+		}
+
+		released = true;
+
+		Tia tia = cpu.getMemory().getTia();
+
+		tv = null;
+		speaker = null;
+		tia.setTv(null);
+		tia.setSpeaker(null);
+		tia.setObservation(null);
+		tia.setFrameOutput(true);
+
+		latch = null;
+		rewind = null;
+		recording = null;
+		replay = null;
+		nextInputCycle = Long.MAX_VALUE;
+		runAhead = 0;
+		ramOnly = false;
+		fastForward = false;
+		frameSkip = 0;
+		skipped = 0;
+
+		governor.setSpeaker(null);
+		governor.setFrameRate(standard.getFrameRate());
+		governor.setEnabled(true);
+
+		pools.get(standard).offer(this);
+	}
+
+	public Rewind getRewind() {
+		return rewind;
+	}
+
+	/**
+	 * Sets the rewind buffer, which is fed after every frame.
+	 * 
+	 * @param rewind
+	 *            : The rewind buffer for this machine, or null for none.
+	 */
+	public void setRewind(Rewind rewind) {
+		this.rewind = rewind;
+	}
+
+	/**
+	 * @return A read only view of the 128 bytes of RAM, which always shows
+	 *         the current contents.
+	 */
+	public ByteBuffer getRamView() {
+		return cpu.getMemory().getPia().getRam().getView();
+	}
+
+	/**
+	 * Copies the 128 bytes of RAM.
+	 * 
+	 * @param dst
+	 *            : The array to copy to.
+	 * @param off
+	 *            : Where the first byte is copied.
+	 */
+	public void copyRam(byte[] dst, int off) {
+		cpu.getMemory().getPia().getRam().copyTo(dst, off);
+	}
+
+	/**
+	 * @return The number of frames finished since boot.
+	 */
+	public long getFrameCount() {
+		return cpu.getMemory().getTia().getFrameCount();
+	}
+
+	/**
+	 * @return The number of CPU cycles executed since boot.
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+
+	public boolean isRamOnly() {
+		return ramOnly;
+	}
+
+	/**
+	 * Turns the RAM-only mode on or off. When on, frames are never colored
+	 * nor sent to the TV or observation, which saves the pixel work. Objects,
+	 * collisions and beam timing are still emulated, so RAM and registers are
+	 * exactly the same as with rendering.
+	 * 
+	 * @param ramOnly
+	 *            : True to skip the picture.
+	 */
+	public void setRamOnly(boolean ramOnly) {
+		this.ramOnly = ramOnly;
+	}
+
+	public int getRunAhead() {
+		return runAhead;
+	}
+
+	/**
+	 * Sets how many frames ahead of the real one are shown. Each one costs a
+	 * whole extra frame of emulation (without coloring, except the shown one).
+	 * 
+	 * @param runAhead
+	 *            : The number of frames, 0 to turn run-ahead off.
+	 */
+	public void setRunAhead(int runAhead) {
+		this.runAhead = Math.max(0, runAhead);
+	}
+
+	public TVStandard getStandard() {
+		return standard;
+	}
+
+	/**
+	 * @return The counters of the work done, to be polled from any thread
+	 *         (see Metrics).
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	public Governor getGovernor() {
+		return governor;
+	}
+
 	public Cartridge getCart() {
 		return cart;
 	}
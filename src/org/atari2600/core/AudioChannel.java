@@ -0,0 +1,194 @@
+package org.atari2600.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class representing one of the two TIA audio channels. Each channel has a
+ * frequency divider (AUDF), a 4 bit pulse counter and a 5 bit noise counter
+ * whose feedback taps are selected by the control register (AUDC). The output
+ * bit of the pulse counter is gated by the volume register (AUDV).
+ *
+ * The channel is clocked twice per scanline, and each clock is split in two
+ * phases: phase 0 updates the divider and the noise feedback, phase 1 shifts
+ * the counters and returns the output level.
+ */
+public class AudioChannel {
+	private int audc, audf, audv;
+
+	private int divCounter, pulseCounter, noiseCounter;
+	private boolean clockEnable, noiseFeedback, noiseCounterBit4,
+			pulseCounterHold;
+
+	public AudioChannel() {
+		reset();
+	}
+
+	/**
+	 * Resets the registers and the counters of the channel.
+	 */
+	public void reset() {
+		audc = 0;
+		audf = 0;
+		audv = 0;
+
+		divCounter = 0;
+		pulseCounter = 0;
+		noiseCounter = 0;
+
+		clockEnable = false;
+		noiseFeedback = false;
+		noiseCounterBit4 = false;
+		pulseCounterHold = false;
+	}
+
+	/**
+	 * First phase of an audio clock: computes the noise feedback and the pulse
+	 * hold for the next shift, and advances the frequency divider.
+	 */
+	public void phase0() {
+		if (clockEnable) {
+			noiseCounterBit4 = (noiseCounter & 0x01) != 0;
+
+			// The two low bits of AUDC select how the 5 bit counter
+			// modulates the pulse counter.
+			switch (audc & 0x03) {
+			case 0x02:
+				pulseCounterHold = (noiseCounter & 0x1E) != 0x02;
+				break;
+
+			case 0x03:
+				pulseCounterHold = !noiseCounterBit4;
+				break;
+
+			default:
+				pulseCounterHold = false;
+				break;
+			}
+
+			if ((audc & 0x03) == 0) {
+				noiseFeedback = ((pulseCounter ^ noiseCounter) & 0x01) != 0
+						|| !(noiseCounter != 0 || pulseCounter != 0x0A)
+						|| (audc & 0x0C) == 0;
+			} else {
+				noiseFeedback = (((noiseCounter & 0x04) >> 2) ^ (noiseCounter & 0x01)) != 0
+						|| noiseCounter == 0;
+			}
+		}
+
+		// The divider counts from 0 to AUDF, enabling the clock once per
+		// period.
+		clockEnable = divCounter == audf;
+
+		if (divCounter == audf || divCounter == 0x1F) {
+			divCounter = 0;
+		} else {
+			divCounter++;
+		}
+	}
+
+	/**
+	 * Second phase of an audio clock: shifts the noise and pulse counters.
+	 *
+	 * @return The output level of the channel (0 to 15).
+	 */
+	public int phase1() {
+		if (clockEnable) {
+			boolean pulseFeedback;
+
+			// The two high bits of AUDC select the pulse counter feedback.
+			switch (audc >> 2) {
+			case 0x00:
+				pulseFeedback = (((pulseCounter & 0x02) >> 1) ^ (pulseCounter & 0x01)) != 0
+						&& pulseCounter != 0x0A && (audc & 0x03) != 0;
+				break;
+
+			case 0x01:
+				pulseFeedback = (pulseCounter & 0x08) == 0;
+				break;
+
+			case 0x02:
+				pulseFeedback = !noiseCounterBit4;
+				break;
+
+			default:
+				pulseFeedback = !((pulseCounter & 0x02) != 0 || (pulseCounter & 0x0E) == 0);
+				break;
+			}
+
+			noiseCounter >>= 1;
+
+			if (noiseFeedback) {
+				noiseCounter |= 0x10;
+			}
+
+			if (!pulseCounterHold) {
+				pulseCounter = ~(pulseCounter >> 1) & 0x07;
+
+				if (pulseFeedback) {
+					pulseCounter |= 0x08;
+				}
+			}
+		}
+
+		return (pulseCounter & 0x01) * audv;
+	}
+
+	/**
+	 * Number of bytes written by saveState.
+	 */
+	public static final int STATE_SIZE = 7;
+
+	public void saveState(ByteBuffer buf) {
+		buf.put((byte) audc);
+		buf.put((byte) audf);
+		buf.put((byte) audv);
+		buf.put((byte) divCounter);
+		buf.put((byte) pulseCounter);
+		buf.put((byte) noiseCounter);
+		buf.put((byte) ((clockEnable ? 1 : 0) | (noiseFeedback ? 2 : 0)
+				| (noiseCounterBit4 ? 4 : 0) | (pulseCounterHold ? 8 : 0)));
+	}
+
+	public void loadState(ByteBuffer buf) {
+		audc = buf.get();
+		audf = buf.get();
+		audv = buf.get();
+		divCounter = buf.get();
+		pulseCounter = buf.get();
+		noiseCounter = buf.get();
+
+		int flags = buf.get();
+
+		clockEnable = (flags & 1) != 0;
+		noiseFeedback = (flags & 2) != 0;
+		noiseCounterBit4 = (flags & 4) != 0;
+		pulseCounterHold = (flags & 8) != 0;
+	}
+
+	// Setters & getters --------------------------------
+
+	public int getAudc() {
+		return audc;
+	}
+
+	public void setAudc(int audc) {
+		this.audc = audc & 0x0F;
+	}
+
+	public int getAudf() {
+		return audf;
+	}
+
+	public void setAudf(int audf) {
+		this.audf = audf & 0x1F;
+	}
+
+	public int getAudv() {
+		return audv;
+	}
+
+	public void setAudv(int audv) {
+		this.audv = audv & 0x0F;
+	}
+
+}
@@ -1,12 +0,0 @@
-package org.atari2600.core;
-
-/**
- * Enumeration representing the different collisions that may take place.
- * 
- * @author Juan Manuel Leflet Estrada
- *
- */
-public enum COL {
-	M0_P1, M0_P0, M1_P0, M1_P1, P0_PF, P0_BL, P1_PF, P1_BL,
-	M0_PF, M0_BL, M1_PF, M1_BL, BL_PF, P0_P1, M0_M1, NONE
-}
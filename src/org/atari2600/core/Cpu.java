@@ -1,5 +1,7 @@
 package org.atari2600.core;
 
+import java.nio.ByteBuffer;
+
 import org.atari2600.util.M;
 
 /**
@@ -16,12 +18,16 @@ public class Cpu {
 
 	private boolean halted;
 
+	// Cycles spent halted since created, for the metrics. Not part of the
+	// state.
+	private long haltedCycles;
+
 	// Page Boundary Crossed
 	private boolean pbCrossed;
 
 	// For debugging purposes
 	private int operand;
-	private String lastInstructionName;
+	private int lastInstructionPc;
 	private String nextInstructionName;
 
 	public Cpu() {
@@ -108,6 +114,7 @@ public class Cpu {
 			cycles = execute();
 		} else {
 			cycles = 1;
+			haltedCycles++;
 		}
 
 		return cycles;
@@ -128,11 +135,9 @@ public class Cpu {
 		// Read and increment afterwards.
 		instruction = mem.read(pc++);
 
-		// Get the instruction name (without the operand yet).
-		lastInstructionName = Integer.toHexString(pc - 1) + " - "
-				+ M.index[instruction];
-
-		// System.out.println(lastInstructionName);
+		// Keep where the instruction was; its name is only built when the
+		// debugger asks for it.
+		lastInstructionPc = pc - 1;
 
 		// On each case, we execute the instruction passing the direction where
 		// the data is stored (if necessary), and set the cycles consumed.
@@ -1672,12 +1677,71 @@ public class Cpu {
 		pbCrossed = ((addr1 ^ addr2) & M.BIT_8) != 0;
 	}
 
+	// Save states ----------------------------------------------
+
+	/**
+	 * Number of bytes written by saveState.
+	 */
+	public static final int STATE_SIZE = 15;
+
+	/**
+	 * Writes the registers and the execution state of the CPU.
+	 * 
+	 * @param buf
+	 *            : The buffer to write to.
+	 */
+	public void saveState(ByteBuffer buf) {
+		buf.putInt(pc);
+		buf.putShort((short) sp);
+		buf.putShort((short) ac);
+		buf.putShort((short) x);
+		buf.putShort((short) y);
+		buf.put((byte) instruction);
+
+		// The status flags are packed here instead of using
+		// getProcessorStatus, because that one is meant for the stack.
+		buf.putShort((short) (p.c | p.z << 1 | p.i << 2 | p.d << 3 | p.b << 4
+				| p.v << 5 | p.n << 6 | (halted ? 1 << 7 : 0)
+				| (pbCrossed ? 1 << 8 : 0)));
+	}
+
+	/**
+	 * Reads the state written by saveState.
+	 * 
+	 * @param buf
+	 *            : The buffer to read from.
+	 */
+	public void loadState(ByteBuffer buf) {
+		pc = buf.getInt();
+		sp = buf.getShort();
+		ac = buf.getShort();
+		x = buf.getShort();
+		y = buf.getShort();
+		instruction = buf.get() & 0xFF;
+
+		int flags = buf.getShort();
+
+		p.c = flags & 1;
+		p.z = (flags >> 1) & 1;
+		p.i = (flags >> 2) & 1;
+		p.d = (flags >> 3) & 1;
+		p.b = (flags >> 4) & 1;
+		p.v = (flags >> 5) & 1;
+		p.n = (flags >> 6) & 1;
+		halted = (flags & (1 << 7)) != 0;
+		pbCrossed = (flags & (1 << 8)) != 0;
+	}
+
 	// Getters & setters ----------------------------------------
 
 	public boolean getHalted() {
 		return halted;
 	}
 
+	public long getHaltedCycles() {
+		return haltedCycles;
+	}
+
 	public int getCycles() {
 		return cycles;
 	}
@@ -1723,8 +1787,13 @@ public class Cpu {
 		return nextInstructionName;
 	}
 
+	/**
+	 * @return The address and name of the last instruction executed (without
+	 *         the operand).
+	 */
 	public String getLastInstructionName() {
-		return lastInstructionName;
+		return Integer.toHexString(lastInstructionPc) + " - "
+				+ M.index[instruction];
 	}
 
 	/**
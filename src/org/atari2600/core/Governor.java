@@ -0,0 +1,136 @@
+package org.atari2600.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.atari2600.audio.Speaker;
+
+/**
+ * Keeps the emulation running at the speed of the real machine. It is called
+ * once per frame and waits until the frame's deadline: it parks the thread
+ * while the deadline is far away and spins during the last stretch, since
+ * parking alone wakes up too late and spinning alone burns a whole core.
+ * 
+ * Optionally the governor follows the sound card: when a speaker is set, the
+ * frame period is slightly stretched or shrunk depending on how full the audio
+ * buffer is, so the emulation neither starves nor floods the sound card.
+ */
+public class Governor {
+	// The last part of the wait is done spinning.
+	private static final long SPIN_NANOS = 1500000L;
+
+	// If we are late more than this number of frames we give up catching up.
+	private static final int MAX_LAG_FRAMES = 4;
+
+	// Maximum relative change of the frame period when following the audio.
+	private static final double MAX_ADJUST = 0.005;
+
+	private long period;
+	private long deadline;
+	private boolean enabled;
+
+	private Speaker speaker;
+	private int audioTarget;
+
+	/**
+	 * @param hz
+	 *            : The frame rate to keep (see TVStandard).
+	 */
+	public Governor(double hz) {
+		setFrameRate(hz);
+		enabled = true;
+		deadline = 0;
+	}
+
+	/**
+	 * Waits until the current frame's time is over. Does nothing if the
+	 * governor is disabled.
+	 */
+	public void pace() {
+		if (!enabled) {
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		if (deadline == 0 || now - deadline > period * MAX_LAG_FRAMES) {
+			// First frame, or too late: start counting from now.
+			deadline = now;
+		}
+
+		deadline += framePeriod();
+
+		long remaining;
+
+		while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+			LockSupport.parkNanos(remaining - SPIN_NANOS);
+		}
+
+		while (deadline - System.nanoTime() > 0) {
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Gets the length of the next frame. When following the audio, it is
+	 * adjusted (up to MAX_ADJUST) proportionally to the distance between the
+	 * audio buffer fill level and its target.
+	 */
+	private long framePeriod() {
+		if (speaker == null || !speaker.isRunning()) {
+			return period;
+		}
+
+		double error = (double) (speaker.getBuffered() - audioTarget)
+				/ audioTarget;
+
+		error = Math.max(-1.0, Math.min(1.0, error));
+
+		return (long) (period * (1.0 + error * MAX_ADJUST));
+	}
+
+	/**
+	 * Forgets the current deadline, for example after a pause.
+	 */
+	public void resync() {
+		deadline = 0;
+	}
+
+	// Setters & getters --------------------------------
+
+	public void setFrameRate(double hz) {
+		period = (long) (1000000000.0 / hz);
+	}
+
+	public double getFrameRate() {
+		return 1000000000.0 / period;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		resync();
+	}
+
+	public Speaker getSpeaker() {
+		return speaker;
+	}
+
+	/**
+	 * Makes the governor follow the fill level of the speaker's buffer. The
+	 * target level is a quarter of its capacity.
+	 * 
+	 * @param speaker
+	 *            : The speaker to follow, or null to use only the clock.
+	 */
+	public void setSpeaker(Speaker speaker) {
+		this.speaker = speaker;
+
+		if (speaker != null) {
+			audioTarget = speaker.getCapacity() / 4;
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package org.atari2600.core;
 
+import java.nio.ByteBuffer;
+
 import org.atari2600.util.M;
 
 /**
@@ -123,6 +125,67 @@ public class IOTimer {
 		timEnable = true;
 	}
 
+	/**
+	 * Sets the levels of the port A pins, where the joysticks are connected.
+	 * 
+	 * @param value
+	 *            : The value read from SWCHA.
+	 */
+	public void setSwcha(int value) {
+		regs[M.SWCHA] = value & 0xFF;
+	}
+
+	/**
+	 * Sets the levels of the port B pins, where the console switches are
+	 * connected.
+	 * 
+	 * @param value
+	 *            : The value read from SWCHB.
+	 */
+	public void setSwchb(int value) {
+		regs[M.SWCHB] = value & 0xFF;
+	}
+
+	/**
+	 * Number of bytes written by saveState.
+	 */
+	public static final int STATE_SIZE = 19;
+
+	/**
+	 * Writes the registers and the timer state.
+	 * 
+	 * @param buf
+	 *            : The buffer to write to.
+	 */
+	public void saveState(ByteBuffer buf) {
+		// INTIM may be -1 for an instant, so registers take two bytes.
+		for (int i = 0; i < regs.length; i++) {
+			buf.putShort((short) regs[i]);
+		}
+
+		buf.put((byte) swchaWrite);
+		buf.put((byte) swchbWrite);
+		buf.putShort((short) tim);
+		buf.putShort((short) interval);
+		buf.put((byte) ((timEnable ? 1 : 0) | (countdown ? 2 : 0)));
+	}
+
+	public void loadState(ByteBuffer buf) {
+		for (int i = 0; i < regs.length; i++) {
+			regs[i] = buf.getShort();
+		}
+
+		swchaWrite = buf.get() & 0xFF;
+		swchbWrite = buf.get() & 0xFF;
+		tim = buf.getShort();
+		interval = buf.getShort();
+
+		int flags = buf.get();
+
+		timEnable = (flags & 1) != 0;
+		countdown = (flags & 2) != 0;
+	}
+
 	/**
 	 * Updates the timer. Must be called after each executed instruction.
 	 */
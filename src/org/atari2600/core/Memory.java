@@ -1,5 +1,7 @@
 package org.atari2600.core;
 
+import java.nio.ByteBuffer;
+
 import org.atari2600.util.M;
 
 /**
@@ -79,6 +81,29 @@ public class Memory {
 		return 0;
 	}
 
+	/**
+	 * Number of bytes written by saveState.
+	 */
+	public static final int STATE_SIZE = 5;
+
+	/**
+	 * Writes the pending write, if any.
+	 * 
+	 * @param buf
+	 *            : The buffer to write to.
+	 */
+	public void saveState(ByteBuffer buf) {
+		buf.put((byte) (waitForCommit ? 1 : 0));
+		buf.putShort((short) addr);
+		buf.putShort((short) data);
+	}
+
+	public void loadState(ByteBuffer buf) {
+		waitForCommit = buf.get() != 0;
+		addr = buf.getShort() & 0xFFFF;
+		data = buf.getShort();
+	}
+
 	public int getSize() {
 		return 0;
 	}
@@ -0,0 +1,180 @@
+package org.atari2600.core;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Counters of the work done by a machine, for monitoring. The emulation thread
+ * keeps them in plain fields and publishes a copy at the end of every frame
+ * behind a sequence lock: the sequence is odd while the copy is being
+ * written, and readers retry until they see the same even sequence before and
+ * after reading. So any thread can take a consistent snapshot at any time,
+ * and the emulation thread never waits nor takes a lock.
+ */
+public class Metrics {
+	private final double cpuHz;
+	private long start;
+
+	// Counters, only touched by the emulation thread.
+	private long cycles;
+	private long stallCycles;
+	private long frames;
+	private long renderedFrames;
+	private long skippedFrames;
+	private long speculativeFrames;
+
+	// Published copy of the counters, guarded by seq.
+	private volatile long seq;
+	private long pubCycles;
+	private long pubStallCycles;
+	private long pubFrames;
+	private long pubRenderedFrames;
+	private long pubSkippedFrames;
+	private long pubSpeculativeFrames;
+	private long pubNanos;
+
+	/**
+	 * @param cpuHz
+	 *            : The CPU clock of the machine, used to compare emulated
+	 *            and real time.
+	 */
+	public Metrics(double cpuHz) {
+		this.cpuHz = cpuHz;
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Zeroes the counters and restarts the clock, for a machine that is
+	 * reused. Called by the emulation thread, or before it starts.
+	 */
+	public void reset() {
+		cycles = 0;
+		stallCycles = 0;
+		frames = 0;
+		renderedFrames = 0;
+		skippedFrames = 0;
+		speculativeFrames = 0;
+		start = System.nanoTime();
+
+		publish();
+	}
+
+	/**
+	 * Counts a frame of the real timeline and publishes the counters. Called
+	 * by the emulation thread at the end of each frame. Frames emulated for
+	 * run-ahead are not counted here (see speculative()).
+	 * 
+	 * @param cycles
+	 *            : The CPU cycles the frame took.
+	 * @param stallCycles
+	 *            : The cycles of those the CPU spent halted by WSYNC.
+	 * @param rendered
+	 *            : Whether the frame was colored and output.
+	 */
+	public void frame(long cycles, long stallCycles, boolean rendered) {
+		this.cycles += cycles;
+		this.stallCycles += stallCycles;
+		frames++;
+
+		if (rendered) {
+			renderedFrames++;
+		}
+
+		publish();
+	}
+
+	/**
+	 * Counts a frame left unrendered by frame skipping. It is published with
+	 * the frame itself.
+	 */
+	public void skipped() {
+		skippedFrames++;
+	}
+
+	/**
+	 * Counts a frame emulated for run-ahead and thrown away afterwards. It is
+	 * published with the next real frame.
+	 * 
+	 * @param rendered
+	 *            : Whether the frame was colored and output (the one shown
+	 *            for each real frame).
+	 */
+	public void speculative(boolean rendered) {
+		speculativeFrames++;
+
+		if (rendered) {
+			renderedFrames++;
+		}
+	}
+
+	private void publish() {
+		long s = seq;
+
+		seq = s + 1;
+		// The copy must not be seen before the odd sequence.
+		VarHandle.storeStoreFence();
+
+		pubCycles = cycles;
+		pubStallCycles = stallCycles;
+		pubFrames = frames;
+		pubRenderedFrames = renderedFrames;
+		pubSkippedFrames = skippedFrames;
+		pubSpeculativeFrames = speculativeFrames;
+		pubNanos = System.nanoTime() - start;
+
+		seq = s + 2;
+	}
+
+	/**
+	 * Takes a consistent copy of the counters as of the end of the last frame.
+	 * May be called from any thread.
+	 * 
+	 * @return The snapshot.
+	 */
+	public MetricsSnapshot snapshot() {
+		MetricsSnapshot snapshot = new MetricsSnapshot();
+
+		snapshot(snapshot);
+
+		return snapshot;
+	}
+
+	/**
+	 * Same as snapshot(), into an existing snapshot so that polling does not
+	 * allocate.
+	 * 
+	 * @param out
+	 *            : The snapshot to fill.
+	 */
+	public void snapshot(MetricsSnapshot out) {
+		while (true) {
+			long s = seq;
+
+			if ((s & 1) != 0) {
+				Thread.onSpinWait();
+				continue;
+			}
+
+			long c = pubCycles;
+			long stall = pubStallCycles;
+			long f = pubFrames;
+			long rendered = pubRenderedFrames;
+			long skipped = pubSkippedFrames;
+			long speculative = pubSpeculativeFrames;
+			long nanos = pubNanos;
+
+			// The copy must be read before the sequence is checked again.
+			VarHandle.loadLoadFence();
+
+			if (seq == s) {
+				out.set(cpuHz, c, stall, f, rendered, skipped, speculative,
+						nanos);
+				return;
+			}
+		}
+	}
+
+	public double getCpuHz() {
+		return cpuHz;
+	}
+
+}
@@ -0,0 +1,139 @@
+package org.atari2600.core;
+
+/**
+ * A consistent copy of a machine's Metrics. The counters are totals since the
+ * metrics were created; since() gives the ones of an interval, for current
+ * rates.
+ */
+public class MetricsSnapshot {
+	private double cpuHz;
+	private long cycles;
+	private long stallCycles;
+	private long frames;
+	private long renderedFrames;
+	private long skippedFrames;
+	private long speculativeFrames;
+	private long wallNanos;
+
+	void set(double cpuHz, long cycles, long stallCycles, long frames,
+			long renderedFrames, long skippedFrames, long speculativeFrames,
+			long wallNanos) {
+		this.cpuHz = cpuHz;
+		this.cycles = cycles;
+		this.stallCycles = stallCycles;
+		this.frames = frames;
+		this.renderedFrames = renderedFrames;
+		this.skippedFrames = skippedFrames;
+		this.speculativeFrames = speculativeFrames;
+		this.wallNanos = wallNanos;
+	}
+
+	/**
+	 * @param earlier
+	 *            : A snapshot of the same metrics taken before this one.
+	 * @return The counters between the two snapshots.
+	 */
+	public MetricsSnapshot since(MetricsSnapshot earlier) {
+		MetricsSnapshot delta = new MetricsSnapshot();
+
+		delta.set(cpuHz, cycles - earlier.cycles, stallCycles
+				- earlier.stallCycles, frames - earlier.frames, renderedFrames
+				- earlier.renderedFrames, skippedFrames - earlier.skippedFrames,
+				speculativeFrames - earlier.speculativeFrames, wallNanos
+						- earlier.wallNanos);
+
+		return delta;
+	}
+
+	// Setters & getters --------------------------------
+
+	/**
+	 * @return The CPU cycles emulated in the real timeline (run-ahead frames
+	 *         are not counted).
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * @return The TIA color clocks emulated (three per CPU cycle).
+	 */
+	public long getColorClocks() {
+		return cycles * 3;
+	}
+
+	/**
+	 * @return The CPU cycles spent halted waiting for WSYNC.
+	 */
+	public long getStallCycles() {
+		return stallCycles;
+	}
+
+	/**
+	 * @return The frames emulated in the real timeline.
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return The frames colored and output, including the run-ahead frame
+	 *         shown in place of each real one.
+	 */
+	public long getRenderedFrames() {
+		return renderedFrames;
+	}
+
+	/**
+	 * @return The frames left unrendered by frame skipping.
+	 */
+	public long getSkippedFrames() {
+		return skippedFrames;
+	}
+
+	/**
+	 * @return The frames emulated for run-ahead and thrown away.
+	 */
+	public long getSpeculativeFrames() {
+		return speculativeFrames;
+	}
+
+	/**
+	 * @return The wall-clock time covered, in nanoseconds.
+	 */
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	/**
+	 * @return The emulated CPU speed, in MHz.
+	 */
+	public double getEmulatedMhz() {
+		return wallNanos == 0 ? 0 : cycles * 1000.0 / wallNanos;
+	}
+
+	/**
+	 * @return The frames emulated per second of wall-clock time.
+	 */
+	public double getFrameRate() {
+		return wallNanos == 0 ? 0 : frames * 1e9 / wallNanos;
+	}
+
+	/**
+	 * @return The emulated time divided by the wall-clock time: 1 is the speed
+	 *         of the real machine.
+	 */
+	public double getRealTimeRatio() {
+		return wallNanos == 0 ? 0 : cycles / cpuHz / (wallNanos / 1e9);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d cycles (%d stalled), %d frames (%d rendered, "
+				+ "%d skipped, %d speculative), %.2f MHz, %.1f fps, %.2fx real "
+				+ "time", cycles, stallCycles, frames, renderedFrames,
+				skippedFrames, speculativeFrames, getEmulatedMhz(),
+				getFrameRate(), getRealTimeRatio());
+	}
+
+}
@@ -1,17 +1,59 @@
 package org.atari2600.core;
 
+import java.nio.ByteBuffer;
+
 public class Ram {
-	private int[] mem;
+	/**
+	 * Number of bytes written by saveState.
+	 */
+	public static final int STATE_SIZE = 128;
+
+	// Stored as bytes so it can be copied and viewed in bulk.
+	private byte[] mem;
+
+	// Read only view of mem.
+	private ByteBuffer view;
 	
 	public Ram() {
-		mem = new int[128];
+		mem = new byte[128];
+		view = ByteBuffer.wrap(mem).asReadOnlyBuffer();
 	}
 	
 	public int read(int addr) {
-		return mem[addr];
+		return mem[addr] & 0xFF;
 	}
 	
 	public void write(int addr, int data) {
-		mem[addr] = data;
+		mem[addr] = (byte) data;
+	}
+
+	/**
+	 * @return A read only view of the RAM. It is not a copy: it always shows
+	 *         the current contents. Absolute gets (get(index)) are safe to
+	 *         use from the emulation thread; other threads may see a
+	 *         partially executed frame.
+	 */
+	public ByteBuffer getView() {
+		return view;
+	}
+
+	/**
+	 * Copies the contents of the RAM.
+	 * 
+	 * @param dst
+	 *            : The array to copy to.
+	 * @param off
+	 *            : Where the first byte is copied.
+	 */
+	public void copyTo(byte[] dst, int off) {
+		System.arraycopy(mem, 0, dst, off, mem.length);
+	}
+
+	public void saveState(ByteBuffer buf) {
+		buf.put(mem);
+	}
+
+	public void loadState(ByteBuffer buf) {
+		buf.get(mem);
 	}
 }
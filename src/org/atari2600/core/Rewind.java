@@ -0,0 +1,285 @@
+package org.atari2600.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps snapshots of the machine taken every few frames, so it can be
+ * rewound. Memory is bounded: snapshots are stored in a fixed-size ring, and
+ * the oldest ones are dropped when it is full.
+ * 
+ * Only the newest snapshot is kept whole. Every older one is stored as the
+ * XOR of itself and the next one, run-length encoded: consecutive states
+ * differ in a handful of bytes (some RAM, the beam, a few TIA registers), so
+ * most of them take some tens of bytes. Since each delta rebuilds a snapshot
+ * from the one after it, dropping the oldest never breaks the others.
+ */
+public class Rewind {
+	private final Atari2600 atari;
+	private final int interval;
+	private int frames;
+
+	// Newest snapshot, whole.
+	private final byte[] newest;
+	private boolean hasNewest;
+
+	// Snapshot being taken, and its buffer.
+	private final byte[] current;
+	private final ByteBuffer currentBuf;
+
+	// Deltas, encoded one after another in a ring of bytes.
+	private final byte[] ring;
+	private int ringHead, ringUsed;
+
+	// Start and length of each delta in the ring, oldest first.
+	private final int[] starts, lengths;
+	private int first, count;
+
+	// Room for encoding or decoding a single delta.
+	private final byte[] scratch;
+
+	/**
+	 * @param atari
+	 *            : The machine to rewind.
+	 * @param interval
+	 *            : Frames between snapshots.
+	 * @param snapshots
+	 *            : Maximum number of snapshots kept.
+	 * @param bytes
+	 *            : Size of the ring where the snapshots are stored.
+	 */
+	public Rewind(Atari2600 atari, int interval, int snapshots, int bytes) {
+		this.atari = atari;
+		this.interval = Math.max(1, interval);
+		frames = 0;
+
+		newest = new byte[Atari2600.STATE_SIZE];
+		current = new byte[Atari2600.STATE_SIZE];
+		currentBuf = ByteBuffer.wrap(current);
+		hasNewest = false;
+
+		ring = new byte[bytes];
+		starts = new int[snapshots];
+		lengths = new int[snapshots];
+
+		// Worst case: every byte differs from its neighbours.
+		scratch = new byte[Atari2600.STATE_SIZE * 2 + 16];
+	}
+
+	/**
+	 * Must be called after every frame. Takes a snapshot every interval
+	 * frames.
+	 */
+	public void frame() {
+		if (++frames >= interval) {
+			frames = 0;
+			capture();
+		}
+	}
+
+	/**
+	 * Takes a snapshot now.
+	 */
+	public void capture() {
+		currentBuf.clear();
+		atari.saveState(currentBuf);
+
+		if (hasNewest) {
+			// What is stored is how to get the previous snapshot back from
+			// the new one.
+			push(scratch, encode(newest, current, scratch));
+		}
+
+		System.arraycopy(current, 0, newest, 0, current.length);
+		hasNewest = true;
+	}
+
+	/**
+	 * Goes back to the newest snapshot and forgets it, so the next call goes
+	 * further back.
+	 * 
+	 * @return False if there were no snapshots left.
+	 */
+	public boolean rewind() {
+		if (!hasNewest) {
+			return false;
+		}
+
+		currentBuf.clear();
+		System.arraycopy(newest, 0, current, 0, newest.length);
+		atari.loadState(currentBuf);
+
+		if (count > 0) {
+			// Rebuild the previous snapshot and drop its delta.
+			int last = (first + count - 1) % starts.length;
+
+			copyOut(starts[last], lengths[last], scratch);
+			decode(scratch, lengths[last], newest);
+
+			ringHead = starts[last];
+			ringUsed -= lengths[last];
+			count--;
+		} else {
+			hasNewest = false;
+		}
+
+		frames = 0;
+
+		return true;
+	}
+
+	/**
+	 * Forgets all the snapshots.
+	 */
+	public void clear() {
+		hasNewest = false;
+		first = 0;
+		count = 0;
+		ringHead = 0;
+		ringUsed = 0;
+		frames = 0;
+	}
+
+	// Delta storage ----------------------------------------------
+
+	/**
+	 * Adds an encoded delta to the ring, dropping the oldest ones until it
+	 * fits.
+	 */
+	private void push(byte[] delta, int len) {
+		if (len > ring.length) {
+			// Can never fit: the history before this point is lost.
+			first = 0;
+			count = 0;
+			ringUsed = 0;
+			return;
+		}
+
+		while (count > 0
+				&& (count == starts.length || ring.length - ringUsed < len)) {
+			ringUsed -= lengths[first];
+			first = (first + 1) % starts.length;
+			count--;
+		}
+
+		int slot = (first + count) % starts.length;
+		int part = Math.min(len, ring.length - ringHead);
+
+		System.arraycopy(delta, 0, ring, ringHead, part);
+		System.arraycopy(delta, part, ring, 0, len - part);
+
+		starts[slot] = ringHead;
+		lengths[slot] = len;
+		ringHead = (ringHead + len) % ring.length;
+		ringUsed += len;
+		count++;
+	}
+
+	/**
+	 * Copies a delta out of the ring, joining it if it wraps around.
+	 */
+	private void copyOut(int start, int len, byte[] dst) {
+		int part = Math.min(len, ring.length - start);
+
+		System.arraycopy(ring, start, dst, 0, part);
+		System.arraycopy(ring, 0, dst, part, len - part);
+	}
+
+	/**
+	 * Encodes a XOR b as pairs of runs: a run of equal bytes (just its
+	 * length) followed by a run of different bytes (its length and the XORed
+	 * bytes). Lengths are stored as varints.
+	 * 
+	 * @return The length of the encoded delta.
+	 */
+	private static int encode(byte[] a, byte[] b, byte[] out) {
+		int n = 0;
+		int i = 0;
+
+		while (i < a.length) {
+			int start = i;
+
+			while (i < a.length && a[i] == b[i]) {
+				i++;
+			}
+
+			int diff = i;
+
+			while (i < a.length && a[i] != b[i]) {
+				i++;
+			}
+
+			n = putVarint(out, n, diff - start);
+			n = putVarint(out, n, i - diff);
+
+			for (int k = diff; k < i; k++) {
+				out[n++] = (byte) (a[k] ^ b[k]);
+			}
+		}
+
+		return n;
+	}
+
+	/**
+	 * Applies an encoded delta to a state (XORing it in place).
+	 */
+	private static void decode(byte[] delta, int len, byte[] state) {
+		int n = 0;
+		int i = 0;
+
+		while (n < len) {
+			int equal = 0, diff = 0, shift = 0, b;
+
+			do {
+				b = delta[n++];
+				equal |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			shift = 0;
+
+			do {
+				b = delta[n++];
+				diff |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			i += equal;
+
+			for (int k = 0; k < diff; k++) {
+				state[i++] ^= delta[n++];
+			}
+		}
+	}
+
+	private static int putVarint(byte[] out, int n, int value) {
+		while (value >= 0x80) {
+			out[n++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+
+		out[n++] = (byte) value;
+
+		return n;
+	}
+
+	// Getters ----------------------------------------------------
+
+	/**
+	 * @return The number of snapshots that can be rewound to.
+	 */
+	public int size() {
+		return hasNewest ? count + 1 : 0;
+	}
+
+	/**
+	 * @return The bytes taken by the stored deltas.
+	 */
+	public int getBytesUsed() {
+		return ringUsed;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+}
@@ -1,8 +1,15 @@
 package org.atari2600.core;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.atari2600.audio.Speaker;
+import org.atari2600.input.Input;
+import org.atari2600.tv.Observation;
 import org.atari2600.tv.Pixel;
 import org.atari2600.tv.TV;
 import org.atari2600.tv.TVFrame;
+import org.atari2600.tv.TVStandard;
 import org.atari2600.util.M;
 
 /**
@@ -17,15 +24,52 @@ public class Tia {
 	// because changes in the PIA's registers affect the position of the
 	// different sprites.
 	private TV tv;
+	private Speaker speaker;
 	private Cpu cpu;
 	private Pia pia;
 
-	// The next frame to be drawn in the TV.
-	private TVFrame nextFrame;
+	// The TV standard sets the number of lines and the palette.
+	private TVStandard standard;
+	private int[] palette;
+
+	// The frame being drawn and the last one finished. They are swapped at the
+	// end of each frame, so a finished frame stays untouched during the next
+	// one (the TV copies the frames it is given). The frame may be left out
+	// when only the observation is wanted.
+	private TVFrame nextFrame, lastFrame;
+	private boolean frameOutput;
+	private Observation observation;
+
+	// The scanline being drawn. Objects are drawn here (HMOVE may paint
+	// pixels on both sides of the beam, but always on the same line), and the
+	// colors are copied to the frame once the line is finished.
+	private Pixel[] line;
+
+	// Collisions are worked out lazily. Drawing an object only marks its
+	// pixel in the object's coverage mask for the line (228 bits, four longs
+	// per object, indexed by PFO ordinal); the masks are ANDed together into
+	// the collision latches when the line ends or a latch is read. present
+	// has a bit per object drawn on the line, so pairs that can't collide are
+	// not even checked.
+	private long[] coverage;
+	private int present;
+
+	// Whether the present frame is rendered. When it isn't, objects are still
+	// drawn on the line (so collisions are exactly the same), but colors are
+	// not resolved and the frame is not sent to the TV.
+	private boolean render;
 
 	// Horizontal and vertical counters to keep track of the beam.
 	private int h, v;
 
+	// Frames end at VSYNC, but if a ROM never VSYNCs they end after maxLines
+	// lines anyway. First line of the present frame not in VBLANK.
+	private int maxLines;
+	private int startLine;
+
+	// Number of frames sent to the TV so far.
+	private long frames;
+
 	// Counters for the PF object sizes and for their hmoves
 	private int p0SizeCount, p1SizeCount, m0SizeCount, m1SizeCount,
 			blSizeCount;
@@ -41,11 +85,70 @@ public class Tia {
 	// Memory
 	private int mem[];
 
+	// Registers and line objects, for bulk transfers to save states.
+	private byte[] stateBytes;
+
+	// Scanlines since power on, and the color clock (lines * 228 + h) when the
+	// paddle capacitors were last released by VBLANK. Paddle ports are only
+	// worked out when read, from the time elapsed since then.
+	private long lines;
+	private long dumpReleased;
+
+	// Time each paddle capacitor takes to charge, in color clocks, and its
+	// range in scanlines.
+	private int[] paddleClocks;
+	private static final int PADDLE_MIN_LINES = 1;
+	private static final int PADDLE_MAX_LINES = 190;
+
+	// Audio channels and the samples they produced since the last drain. Two
+	// samples are produced per scanline.
+	private AudioChannel aud0, aud1;
+	private byte[] audioBuffer;
+	private int audioLength;
+
 	public Tia() {
+		this(TVStandard.NTSC);
+	}
+
+	public Tia(TVStandard standard) {
 		mem = new int[64];
-		nextFrame = new TVFrame();
+		this.standard = standard;
+		palette = standard.getPalette();
+		nextFrame = new TVFrame(standard.getLines());
 		h = 0;
 		v = 0;
+		maxLines = standard.getLines() * 5 / 4;
+		startLine = -1;
+
+		line = new Pixel[228];
+		coverage = new long[PFO_COUNT * 4];
+		present = 0;
+		render = true;
+		frameOutput = true;
+		stateBytes = new byte[64];
+
+		for (int i = 0; i < line.length; i++) {
+			line[i] = new Pixel();
+		}
+
+		lines = 0;
+		dumpReleased = 0;
+		paddleClocks = new int[4];
+
+		// Nothing pressed and the paddles centered until told otherwise, so a
+		// TIA that is not driven by Atari2600 (the debugger's) reads sane
+		// inputs.
+		setInputPort(M.INPT4, Input.inpt4(Input.DEFAULT));
+		setInputPort(M.INPT5, Input.inpt5(Input.DEFAULT));
+
+		for (int i = 0; i < paddleClocks.length; i++) {
+			setPaddle(i, Input.paddle(Input.DEFAULT, i));
+		}
+
+		aud0 = new AudioChannel();
+		aud1 = new AudioChannel();
+		audioBuffer = new byte[AUDIO_BUFFER_SIZE];
+		audioLength = 0;
 	}
 
 	/**
@@ -62,16 +165,30 @@ public class Tia {
 
 		// VSYNC
 		case M.VSYNC:
+			boolean wasSyncing = vSyncing();
+
 			mem[addr] = data;
 
-			// Make VSYNC
-			if ((data & M.VERTICAL_SYNC) == M.VERTICAL_SYNC) {
-				h = 0; // Stella doesn't do this... Don't know why
-				v = 0;
+			// Starting VSYNC ends the frame. The horizontal counter is not
+			// affected: it keeps running as usual, and the line being drawn
+			// becomes the first line of the next frame.
+			if (!wasSyncing && vSyncing()) {
+				endFrame(v, true);
 			}
 
 			break;
 
+		// VBLANK: bit 7 grounds the paddle capacitors. They start charging
+		// when it is cleared.
+		case M.VBLANK:
+			if ((mem[addr] & M.DUMP_PADDLES) != 0
+					&& (data & M.DUMP_PADDLES) == 0) {
+				dumpReleased = clock();
+			}
+
+			mem[addr] = data;
+			break;
+
 		// =========================
 		// Strobe registers
 		// =========================
@@ -124,9 +241,11 @@ public class Tia {
 			clearMotionRegisters();
 			break;
 
-		// CXCLR clears all collision latches.
+		// CXCLR clears all collision latches. What was drawn before on the line
+		// doesn't count any more either.
 		case M.CXCLR:
 			clearCollisions();
+			clearCoverage();
 			break;
 
 		// =========================
@@ -195,14 +314,112 @@ public class Tia {
 
 			break;
 
-		default:
+		// Audio registers are forwarded to their channel.
+		case M.AUDC0:
 			mem[addr] = data;
+			aud0.setAudc(data);
+			break;
+
+		case M.AUDC1:
+			mem[addr] = data;
+			aud1.setAudc(data);
+			break;
+
+		case M.AUDF0:
+			mem[addr] = data;
+			aud0.setAudf(data);
+			break;
+
+		case M.AUDF1:
+			mem[addr] = data;
+			aud1.setAudf(data);
+			break;
+
+		case M.AUDV0:
+			mem[addr] = data;
+			aud0.setAudv(data);
+			break;
+
+		case M.AUDV1:
+			mem[addr] = data;
+			aud1.setAudv(data);
+			break;
+
+		default:
+			// Collision latches and input ports are read only: writing to
+			// their addresses does nothing.
+			if (addr < M.CXM0P) {
+				mem[addr] = data;
+			}
 			break;
 		}
 	}
 
 	public int read(int addr) {
-		return mem[addr];
+		// Only A0-A3 are decoded on reads, so every read hits the collision
+		// latches or the input ports, whatever the mirror used.
+		int reg = M.CXM0P | (addr & 0x0F);
+
+		if (reg <= M.CXPPMM) {
+			foldCollisions();
+		} else if (reg <= M.INPT3) {
+			return readPaddle(reg - M.INPT0);
+		}
+
+		return mem[reg];
+	}
+
+	/**
+	 * Works out a paddle port: bit 7 is 1 once the capacitor has charged.
+	 * 
+	 * @param paddle
+	 *            : The paddle (0 to 3).
+	 * @return The value of the port.
+	 */
+	private int readPaddle(int paddle) {
+		if ((mem[M.VBLANK] & M.DUMP_PADDLES) != 0) {
+			// Grounded.
+			return 0;
+		}
+
+		return clock() - dumpReleased >= paddleClocks[paddle] ? 0x80 : 0;
+	}
+
+	/**
+	 * @return The color clocks elapsed since power on.
+	 */
+	private long clock() {
+		return lines * 228 + h;
+	}
+
+	/**
+	 * Sets the position of a paddle. The charge time grows linearly with it,
+	 * from PADDLE_MIN_LINES to PADDLE_MAX_LINES scanlines, which covers the
+	 * picture.
+	 * 
+	 * @param paddle
+	 *            : The paddle (0 to 3).
+	 * @param position
+	 *            : The position, from 0 to 255.
+	 */
+	public void setPaddle(int paddle, int position) {
+		int charge = PADDLE_MIN_LINES + position
+				* (PADDLE_MAX_LINES - PADDLE_MIN_LINES) / 255;
+
+		paddleClocks[paddle] = charge * 228;
+	}
+
+	/**
+	 * Sets the level of an input port.
+	 * 
+	 * @param port
+	 *            : The port (INPT4 or INPT5).
+	 * @param value
+	 *            : The value read from it (only bit 7 is used: 0 while the
+	 *            button is pressed).
+	 */
+	public void setInputPort(int port, int value) {
+		mem[port] = value & 0x80;
 	}
 
 	/**
@@ -213,22 +430,27 @@ public class Tia {
 	 * </ul>
 	 */
 	public void executeNext() {
-		Pixel pixel;
+		Pixel pixel = line[h];
 
 		if (vSyncing() || vBlanking()) {
 			// If we are blanking or syncing, paint it black.
-			pixel = new Pixel();
+			if (render) {
+				pixel.setColor(BLACK);
+			}
+
+			pixel.setObj(PFO.BG);
 		} else { // Else, we draw the next pixel!
 			// We always draw the background first, and then draw something else
 			// on top if necessary. The pixel's PFO only changes if something is
 			// drawn upon it. If we are hBlanking, draw the background black.
-			if (hBlanking()) {
-				pixel = new Pixel();
-			} else {
-				pixel = new Pixel(getColor(PFO.BG));
-				pixel.setObj(PFO.BG);
+			// Colors are left alone when not rendering: only the objects
+			// matter for collisions.
+			if (render) {
+				pixel.setColor(hBlanking() ? BLACK : getColor(PFO.BG));
 			}
 
+			pixel.setObj(PFO.BG);
+
 			// Check priority
 			if ((mem[M.CTRLPF] & M.PLAYFIELD_BALL_PRIORITY) == 0) {
 				// Draw with the normal priority: players/missiles on top.
@@ -243,10 +465,6 @@ public class Tia {
 
 		}
 
-		//if (v >= 42 && h >= 68)
-		//	tv.repaint(nextFrame);
-
-		nextFrame.setPixel(h, v, pixel);
 		updateBeam();
 	}
 
@@ -346,7 +564,7 @@ public class Tia {
 
 					// If priority was not higher we don't paint, but there may
 					// still be a collision
-					setCollision(p.checkCollision(PFO.PF));
+					cover(PFO.PF, h);
 				}
 			} else {
 				// Score mode off, paint it with PF color
@@ -359,7 +577,7 @@ public class Tia {
 					}
 
 					// Check collisions
-					setCollision(p.checkCollision(PFO.PF));
+					cover(PFO.PF, h);
 				}
 			}
 
@@ -392,18 +610,19 @@ public class Tia {
 								p.setObj(PFO.B);
 							}
 
-							setCollision(p.checkCollision(PFO.B));
+							cover(PFO.B, h);
 						} else {
 							// There is movement: Have to paint the outer pixel
 							// given by the HMBL reg
-							Pixel outer = nextFrame.getPixel(h + hm, v);
+							int pos = h + hm;
+							Pixel outer = line[pos];
 
 							if (!outer.hasHigherPriorityThan(PFO.B)) {
 								outer.setColor(getColor(PFO.B));
 								outer.setObj(PFO.B);
 							}
 
-							setCollision(outer.checkCollision(PFO.B));
+							cover(PFO.B, pos);
 						}
 
 					} else {
@@ -417,13 +636,14 @@ public class Tia {
 				} else {
 					// We are hBlanking; then draw at the left side of the
 					// screen plus 2 pixels
-					Pixel outer = nextFrame.getPixel(68 - h + 2, v);
+					int pos = 68 - h + 2;
+					Pixel outer = line[pos];
 					outer.setColor(getColor(PFO.B));
-					setCollision(outer.checkCollision(PFO.B));
+					cover(PFO.B, pos);
 					outer.setObj(PFO.B);
 				}
 
-				setCollision(p.checkCollision(PFO.B));
+				cover(PFO.B, h);
 				// p.setObj(PFO.B);
 				blSizeCount--; // Dec. ball counter (size)
 			} else {
@@ -462,16 +682,17 @@ public class Tia {
 								p.setObj(PFO.M1);
 							}
 
-							setCollision(p.checkCollision(PFO.M1));
+							cover(PFO.M1, h);
 						} else { // Movement
-							Pixel outer = nextFrame.getPixel(h + hm, v);
+							int pos = h + hm;
+							Pixel outer = line[pos];
 
 							if (!outer.hasHigherPriorityThan(PFO.M1)) {
 								outer.setColor(getColor(PFO.M1));
 								outer.setObj(PFO.M1);
 							}
 
-							setCollision(outer.checkCollision(PFO.M1));
+							cover(PFO.M1, pos);
 						}
 
 					} else {
@@ -481,13 +702,14 @@ public class Tia {
 						}
 					}
 				} else { // Hblanking and reset position is on:
-					Pixel outer = nextFrame.getPixel(68 - h + 2, v);
+					int pos = 68 - h + 2;
+					Pixel outer = line[pos];
 					outer.setColor(getColor(PFO.M1));
-					setCollision(outer.checkCollision(PFO.M1));
+					cover(PFO.M1, pos);
 					outer.setObj(PFO.M1);
 				}
 
-				setCollision(p.checkCollision(PFO.M1));
+				cover(PFO.M1, h);
 				// p.setObj(PFO.B);
 				m1SizeCount--; // Dec. ball counter (size)
 			} else {
@@ -511,16 +733,17 @@ public class Tia {
 								p.setObj(PFO.P1);
 							}
 
-							setCollision(p.checkCollision(PFO.P1));
+							cover(PFO.P1, h);
 						} else { // Movement
-							Pixel outer = nextFrame.getPixel(h + hm, v);
+							int pos = h + hm;
+							Pixel outer = line[pos];
 
 							if (!outer.hasHigherPriorityThan(PFO.P1)) {
 								outer.setColor(getColor(PFO.P1));
 								outer.setObj(PFO.P1);
 							}
 
-							setCollision(outer.checkCollision(PFO.P1));
+							cover(PFO.P1, pos);
 						}
 
 					} else {
@@ -530,13 +753,14 @@ public class Tia {
 						}
 					}
 				} else { // Hblanking and reset position is on:
-					Pixel outer = nextFrame.getPixel(68 - h + 2, v);
+					int pos = 68 - h + 2;
+					Pixel outer = line[pos];
 					outer.setColor(getColor(PFO.P1));
-					setCollision(outer.checkCollision(PFO.P1));
+					cover(PFO.P1, pos);
 					outer.setObj(PFO.P1);
 				}
 
-				setCollision(p.checkCollision(PFO.P1));
+				cover(PFO.P1, h);
 				// p.setObj(PFO.B);
 				p1SizeCount--; // Dec. ball counter (size)
 			} else {
@@ -560,16 +784,17 @@ public class Tia {
 								p.setObj(PFO.M0);
 							}
 
-							setCollision(p.checkCollision(PFO.M0));
+							cover(PFO.M0, h);
 						} else { // Movement
-							Pixel outer = nextFrame.getPixel(h + hm, v);
+							int pos = h + hm;
+							Pixel outer = line[pos];
 
 							if (!outer.hasHigherPriorityThan(PFO.M0)) {
 								outer.setColor(getColor(PFO.M0));
 								outer.setObj(PFO.M0);
 							}
 
-							setCollision(outer.checkCollision(PFO.M0));
+							cover(PFO.M0, pos);
 						}
 
 					} else {
@@ -579,13 +804,14 @@ public class Tia {
 						}
 					}
 				} else { // Hblanking and reset position is on:
-					Pixel outer = nextFrame.getPixel(68 - h + 2, v);
+					int pos = 68 - h + 2;
+					Pixel outer = line[pos];
 					outer.setColor(getColor(PFO.M0));
-					setCollision(outer.checkCollision(PFO.M0));
+					cover(PFO.M0, pos);
 					outer.setObj(PFO.M0);
 				}
 
-				setCollision(p.checkCollision(PFO.M0));
+				cover(PFO.M0, h);
 				// p.setObj(PFO.B);
 				m0SizeCount--; // Dec. ball counter (size)
 			} else {
@@ -609,16 +835,17 @@ public class Tia {
 								p.setObj(PFO.P0);
 							}
 
-							setCollision(p.checkCollision(PFO.P0));
+							cover(PFO.P0, h);
 						} else { // Movement
-							Pixel outer = nextFrame.getPixel(h + hm, v);
+							int pos = h + hm;
+							Pixel outer = line[pos];
 
 							if (!outer.hasHigherPriorityThan(PFO.P0)) {
 								outer.setColor(getColor(PFO.P0));
 								outer.setObj(PFO.P0);
 							}
 
-							setCollision(outer.checkCollision(PFO.P0));
+							cover(PFO.P0, pos);
 						}
 
 					} else {
@@ -628,13 +855,14 @@ public class Tia {
 						}
 					}
 				} else { // Hblanking and reset position is on:
-					Pixel outer = nextFrame.getPixel(68 - h + 2, v);
+					int pos = 68 - h + 2;
+					Pixel outer = line[pos];
 					outer.setColor(getColor(PFO.P0));
-					setCollision(outer.checkCollision(PFO.P0));
+					cover(PFO.P0, pos);
 					outer.setObj(PFO.P0);
 				}
 
-				setCollision(p.checkCollision(PFO.P0));
+				cover(PFO.P0, h);
 				// p.setObj(PFO.B);
 				p0SizeCount--; // Dec. ball counter (size)
 			} else {
@@ -653,13 +881,23 @@ public class Tia {
 	 */
 	private void updateBeam() {
 		if (h == 227) {
+			foldCollisions();
+			clearCoverage();
+			flushLine();
 			h = 0;
+			lines++;
 			resumeCPU(); // In case the CPU was waiting for WSYNC
+			clockAudio();
 
-			if (v == 261) {
-				v = 0;
-				tv.repaint(nextFrame);
-				nextFrame = new TVFrame();
+			// The first line drawn without VBLANK is where the picture
+			// starts.
+			if (startLine < 0 && !vBlanking() && !vSyncing()) {
+				startLine = v;
+			}
+
+			if (v == maxLines - 1) {
+				// The ROM did not VSYNC in time: end the frame anyway.
+				endFrame(maxLines, false);
 			} else {
 				v++;
 			}
@@ -668,6 +906,117 @@ public class Tia {
 		}
 	}
 
+	/**
+	 * Finishes the present frame: attaches its metadata, sends it to the TV
+	 * (unless skipped) together with its sound, and moves the beam to the top.
+	 * 
+	 * @param lines
+	 *            : The number of lines of the frame.
+	 * @param vsync
+	 *            : Whether the frame ended because of VSYNC.
+	 */
+	private void endFrame(int lines, boolean vsync) {
+		frames++;
+
+		if (render && observation != null) {
+			observation.endFrame();
+		}
+
+		// A skipped frame is not sent, so it can be drawn again.
+		if (render && frameOutput) {
+			// Lines that were not drawn this time are cleared.
+			int drawn = Math.min(lines, nextFrame.getHeight());
+
+			Arrays.fill(nextFrame.getPixels(), drawn * TVFrame.WIDTH,
+					nextFrame.getPixels().length, BLACK);
+
+			nextFrame.setLineCount(lines);
+			nextFrame.setStartLine(startLine);
+			nextFrame.setVsync(vsync);
+
+			if (tv != null) {
+				tv.repaint(nextFrame);
+			}
+
+			TVFrame done = nextFrame;
+
+			nextFrame = lastFrame != null ? lastFrame : new TVFrame(
+					standard.getLines());
+			lastFrame = done;
+		}
+
+		if (speaker != null) {
+			speaker.write(audioBuffer, audioLength);
+			audioLength = 0;
+		}
+
+		v = 0;
+		startLine = -1;
+	}
+
+	/**
+	 * Copies the colors of the present line to the frame, unless the frame is
+	 * not being rendered.
+	 */
+	private void flushLine() {
+		if (!render) {
+			return;
+		}
+
+		if (observation != null) {
+			observation.addLine(v, line);
+		}
+
+		// Lines beyond the frame size are not stored.
+		if (frameOutput && v < nextFrame.getHeight()) {
+			for (int i = 0; i < line.length; i++) {
+				nextFrame.setPixelColor(i, v, line[i].getColor());
+			}
+		}
+	}
+
+	// Audio ------------------------------------------------------
+
+	/**
+	 * Clocks both audio channels for a whole scanline. The channels are
+	 * clocked twice per line, so two samples are produced. Doing it once per
+	 * line instead of checking the position on every color clock keeps audio
+	 * out of the per pixel path.
+	 */
+	private void clockAudio() {
+		if (audioLength + 2 > audioBuffer.length) {
+			// Nobody drained the samples: drop them instead of growing.
+			audioLength = 0;
+		}
+
+		for (int i = 0; i < 2; i++) {
+			aud0.phase0();
+			aud1.phase0();
+			audioBuffer[audioLength++] = (byte) (aud0.phase1() + aud1.phase1());
+		}
+	}
+
+	/**
+	 * Copies the audio samples produced since the last call into the given
+	 * buffer. Each sample is the sum of both channels' levels (0 to 30), at a
+	 * rate of two samples per scanline (about 31.4 kHz on NTSC). If the buffer
+	 * is too small, the samples that do not fit are kept, oldest first, for
+	 * the next call.
+	 * 
+	 * @param dst
+	 *            : The buffer to copy the samples to.
+	 * @return The number of samples copied.
+	 */
+	public int drainAudio(byte[] dst) {
+		int n = Math.min(audioLength, dst.length);
+
+		System.arraycopy(audioBuffer, 0, dst, 0, n);
+		System.arraycopy(audioBuffer, n, audioBuffer, 0, audioLength - n);
+		audioLength -= n;
+
+		return n;
+	}
+
 	// CPU control ------------------------------------------------
 
 	private void haltCPU() {
@@ -716,78 +1065,82 @@ public class Tia {
 	}
 
 	/**
-	 * Sets the bit of the corresponding collision register to 1.
+	 * Marks an object as drawn at a pixel of the line.
 	 * 
-	 * @param col
-	 *            : The collision to set.
+	 * @param obj
+	 *            : The object.
+	 * @param pos
+	 *            : The pixel (0 to 227).
 	 */
-	private void setCollision(COL col) {
-		switch (col) {
-		case M0_P1:
-			mem[M.CXM0P] |= M.BIT_7;
-			break;
-
-		case M0_P0:
-			mem[M.CXM0P] |= M.BIT_6;
-			break;
-
-		case M1_P0:
-			mem[M.CXM1P] |= M.BIT_7;
-			break;
-
-		case M1_P1:
-			mem[M.CXM1P] |= M.BIT_6;
-			break;
-
-		case P0_PF:
-			mem[M.CXP0FB] |= M.BIT_7;
-			break;
+	private void cover(PFO obj, int pos) {
+		int o = obj.ordinal();
 
-		case P0_BL:
-			mem[M.CXP0FB] |= M.BIT_6;
-			break;
-
-		case P1_PF:
-			mem[M.CXP1FB] |= M.BIT_7;
-			break;
-
-		case P1_BL:
-			mem[M.CXP1FB] |= M.BIT_6;
-			break;
-
-		case M0_PF:
-			mem[M.CXM0FB] |= M.BIT_7;
-			break;
+		coverage[o * 4 + (pos >> 6)] |= 1L << pos;
+		present |= 1 << o;
+	}
 
-		case M0_BL:
-			mem[M.CXM0FB] |= M.BIT_6;
-			break;
+	/**
+	 * Sets the collision latches of every pair of objects drawn on the same
+	 * pixel of the line so far. May be called any number of times.
+	 */
+	private void foldCollisions() {
+		// At least two objects are needed for a collision.
+		if ((present & (present - 1)) == 0) {
+			return;
+		}
 
-		case M1_PF:
-			mem[M.CXM1FB] |= M.BIT_7;
-			break;
+		for (int i = 0; i < PAIRS.length; i++) {
+			int pair = PAIRS[i];
 
-		case M1_BL:
-			mem[M.CXM1FB] |= M.BIT_6;
-			break;
-
-		case BL_PF:
-			mem[M.CXBLPF] |= M.BIT_7;
-			break;
+			if ((present & pair) != pair) {
+				continue;
+			}
 
-		case P0_P1:
-			mem[M.CXPPMM] |= M.BIT_7;
-			break;
+			int a = Integer.numberOfTrailingZeros(pair) * 4;
+			int b = (31 - Integer.numberOfLeadingZeros(pair)) * 4;
 
-		case M0_M1:
-			mem[M.CXPPMM] |= M.BIT_6;
-			break;
+			if (((coverage[a] & coverage[b])
+					| (coverage[a + 1] & coverage[b + 1])
+					| (coverage[a + 2] & coverage[b + 2])
+					| (coverage[a + 3] & coverage[b + 3])) != 0) {
+				mem[PAIR_REGS[i]] |= PAIR_BITS[i];
+			}
+		}
+	}
 
-		default:
-			break;
+	private void clearCoverage() {
+		if (present != 0) {
+			Arrays.fill(coverage, 0);
+			present = 0;
 		}
 	}
 
+	private static final int PFO_COUNT = PFO.values().length;
+
+	// The 15 pairs of objects (as bits of PFO ordinals), and the latch and bit
+	// each one sets.
+	private static final int[] PAIRS = {
+			pair(PFO.M0, PFO.P1), pair(PFO.M0, PFO.P0),
+			pair(PFO.M1, PFO.P0), pair(PFO.M1, PFO.P1),
+			pair(PFO.P0, PFO.PF), pair(PFO.P0, PFO.B),
+			pair(PFO.P1, PFO.PF), pair(PFO.P1, PFO.B),
+			pair(PFO.M0, PFO.PF), pair(PFO.M0, PFO.B),
+			pair(PFO.M1, PFO.PF), pair(PFO.M1, PFO.B),
+			pair(PFO.B, PFO.PF),
+			pair(PFO.P0, PFO.P1), pair(PFO.M0, PFO.M1) };
+
+	private static final int[] PAIR_REGS = { M.CXM0P, M.CXM0P, M.CXM1P,
+			M.CXM1P, M.CXP0FB, M.CXP0FB, M.CXP1FB, M.CXP1FB, M.CXM0FB,
+			M.CXM0FB, M.CXM1FB, M.CXM1FB, M.CXBLPF, M.CXPPMM, M.CXPPMM };
+
+	private static final int[] PAIR_BITS = { M.BIT_7, M.BIT_6, M.BIT_7,
+			M.BIT_6, M.BIT_7, M.BIT_6, M.BIT_7, M.BIT_6, M.BIT_7, M.BIT_6,
+			M.BIT_7, M.BIT_6, M.BIT_7, M.BIT_7, M.BIT_6 };
+
+	private static int pair(PFO a, PFO b) {
+		return (1 << a.ordinal()) | (1 << b.ordinal());
+	}
+
 	/**
 	 * Gets the horizontal motion value. Actually transforms a 4 bit number to
 	 * 2's complement.
@@ -809,6 +1162,126 @@ public class Tia {
 		return hm;
 	}
 
+	// Save states ----------------------------------------------
+
+	/**
+	 * Number of bytes written by saveState.
+	 */
+	public static final int STATE_SIZE = 45 + 64 + PFO_COUNT * 4 * 8 + 1
+			+ 2 * AudioChannel.STATE_SIZE;
+
+	/**
+	 * Writes the registers, the beam and object counters and the audio
+	 * channels. Of the line being drawn only the object coverage is kept,
+	 * since it takes part in collisions; colors are just output.
+	 * 
+	 * @param buf
+	 *            : The buffer to write to.
+	 */
+	public void saveState(ByteBuffer buf) {
+		buf.putShort((short) h);
+		buf.putShort((short) v);
+		buf.putShort((short) startLine);
+		buf.putLong(frames);
+		buf.putLong(lines);
+		buf.putLong(dumpReleased);
+
+		buf.put((byte) p0SizeCount);
+		buf.put((byte) p1SizeCount);
+		buf.put((byte) m0SizeCount);
+		buf.put((byte) m1SizeCount);
+		buf.put((byte) blSizeCount);
+		buf.put((byte) p0hMoveCnt);
+		buf.put((byte) p1hMoveCnt);
+		buf.put((byte) m0hMoveCnt);
+		buf.put((byte) m1hMoveCnt);
+		buf.put((byte) blhMoveCnt);
+
+		buf.putShort((short) ((resetP0 ? 1 : 0) | (resetP1 ? 1 << 1 : 0)
+				| (resetM0 ? 1 << 2 : 0) | (resetM1 ? 1 << 3 : 0)
+				| (resetBL ? 1 << 4 : 0) | (horizMove ? 1 << 5 : 0)
+				| (delayP0 ? 1 << 6 : 0) | (delayP1 ? 1 << 7 : 0)
+				| (delayB ? 1 << 8 : 0)));
+		buf.put((byte) delayedDataP0);
+		buf.put((byte) delayedDataP1);
+		buf.put((byte) delayedDataB);
+
+		// Registers are gathered first and written at once.
+		for (int i = 0; i < mem.length; i++) {
+			stateBytes[i] = (byte) mem[i];
+		}
+
+		buf.put(stateBytes);
+
+		for (int i = 0; i < coverage.length; i++) {
+			buf.putLong(coverage[i]);
+		}
+
+		buf.put((byte) present);
+
+		aud0.saveState(buf);
+		aud1.saveState(buf);
+	}
+
+	/**
+	 * Reads the state written by saveState.
+	 * 
+	 * @param buf
+	 *            : The buffer to read from.
+	 */
+	public void loadState(ByteBuffer buf) {
+		h = buf.getShort();
+		v = buf.getShort();
+		startLine = buf.getShort();
+		frames = buf.getLong();
+		lines = buf.getLong();
+		dumpReleased = buf.getLong();
+
+		p0SizeCount = buf.get();
+		p1SizeCount = buf.get();
+		m0SizeCount = buf.get();
+		m1SizeCount = buf.get();
+		blSizeCount = buf.get();
+		p0hMoveCnt = buf.get();
+		p1hMoveCnt = buf.get();
+		m0hMoveCnt = buf.get();
+		m1hMoveCnt = buf.get();
+		blhMoveCnt = buf.get();
+
+		int flags = buf.getShort();
+
+		resetP0 = (flags & 1) != 0;
+		resetP1 = (flags & (1 << 1)) != 0;
+		resetM0 = (flags & (1 << 2)) != 0;
+		resetM1 = (flags & (1 << 3)) != 0;
+		resetBL = (flags & (1 << 4)) != 0;
+		horizMove = (flags & (1 << 5)) != 0;
+		delayP0 = (flags & (1 << 6)) != 0;
+		delayP1 = (flags & (1 << 7)) != 0;
+		delayB = (flags & (1 << 8)) != 0;
+		delayedDataP0 = buf.get() & 0xFF;
+		delayedDataP1 = buf.get() & 0xFF;
+		delayedDataB = buf.get() & 0xFF;
+
+		buf.get(stateBytes);
+
+		for (int i = 0; i < mem.length; i++) {
+			mem[i] = stateBytes[i] & 0xFF;
+		}
+
+		for (int i = 0; i < coverage.length; i++) {
+			coverage[i] = buf.getLong();
+		}
+
+		present = buf.get();
+
+		aud0.loadState(buf);
+		aud1.loadState(buf);
+
+		// Samples produced before belong to another timeline.
+		audioLength = 0;
+	}
+
 	// Setters & Getters -----------------------------------------
 
 	public TV getTv() {
@@ -819,6 +1292,14 @@ public class Tia {
 		this.tv = tv;
 	}
 
+	public Speaker getSpeaker() {
+		return speaker;
+	}
+
+	public void setSpeaker(Speaker speaker) {
+		this.speaker = speaker;
+	}
+
 	public Cpu getCpu() {
 		return cpu;
 	}
@@ -827,6 +1308,10 @@ public class Tia {
 		this.cpu = cpu;
 	}
 
+	public TVStandard getStandard() {
+		return standard;
+	}
+
 	public TVFrame getNextFrame() {
 		return nextFrame;
 	}
@@ -835,6 +1320,43 @@ public class Tia {
 		this.nextFrame = nextFrame;
 	}
 
+	public Observation getObservation() {
+		return observation;
+	}
+
+	/**
+	 * Sets an observation to be filled with every rendered frame.
+	 * 
+	 * @param observation
+	 *            : The observation, or null for none.
+	 */
+	public void setObservation(Observation observation) {
+		this.observation = observation;
+	}
+
+	public boolean isFrameOutput() {
+		return frameOutput;
+	}
+
+	/**
+	 * Turns the full color frame on or off. When off, rendered frames only
+	 * fill the observation, and nothing is sent to the TV.
+	 * 
+	 * @param frameOutput
+	 *            : False to leave the frame out.
+	 */
+	public void setFrameOutput(boolean frameOutput) {
+		this.frameOutput = frameOutput;
+	}
+
+	/**
+	 * @return The last frame rendered, or null if none was rendered yet. It is
+	 *         drawn over again two frames later, so copy it to keep it.
+	 */
+	public TVFrame getLastFrame() {
+		return lastFrame;
+	}
+
 	public Pia getPia() {
 		return pia;
 	}
@@ -843,19 +1365,56 @@ public class Tia {
 		this.pia = pia;
 	}
 
+	public boolean getRender() {
+		return render;
+	}
+
+	/**
+	 * Sets whether the frame being drawn is rendered. Should only be changed
+	 * between frames.
+	 * 
+	 * @param render
+	 *            : False to skip color resolution and not send the frame to
+	 *            the TV.
+	 */
+	public void setRender(boolean render) {
+		this.render = render;
+	}
+
+	public long getFrameCount() {
+		return frames;
+	}
+
+	public AudioChannel getAudio0() {
+		return aud0;
+	}
+
+	public AudioChannel getAudio1() {
+		return aud1;
+	}
+
+	public int getAudioLength() {
+		return audioLength;
+	}
+
 	// ---
 
 	/**
-	 * Gets the RGB color for the playfield object passed as a parameter,
-	 * checking the registers.
+	 * Gets the ARGB color for the playfield object passed as a parameter,
+	 * checking the registers and the palette of the TV standard.
 	 * 
 	 * @param obj
 	 *            The object whose color is wanted to be checked.
-	 * @return The current RGB color of the object
+	 * @return The current ARGB color of the object
 	 */
 	private int getColor(PFO obj) {
 		int c = 0;
 
+		// Colors of skipped frames are never seen.
+		if (!render) {
+			return 0;
+		}
+
 		switch (obj) {
 		case P0:
 		case M0:
@@ -888,35 +1447,18 @@ public class Tia {
 		// 0x0E. So we get rid of the "color" part (the 4 MSB's) and use only
 		// the luminosity part (the 4 LSB's)
 		if ((pia.read(M.SWCHB) & M.COLOR_SWITCH) == 0) {
-			return colorLUT[(c >> 1) & 0x7];
+			return palette[(c >> 1) & 0x7];
 		} else {
-			return colorLUT[c >> 1];
-		}
-	}
-
-	// Look-up table with the RGB color values ordered (0x00, 0x02, etc.)
-	private static final int colorLUT[] = { 0x000000, 0x404040, 0x6c6c6c,
-			0x909090, 0xb0b0b0, 0xc8c8c8, 0xdcdcdc, 0xffffff, 0x444400,
-			0x646410, 0x848424, 0xa0a034, 0xb8b840, 0xd0d050, 0xe8e85c,
-			0xfcfc68, 0x702800, 0x844414, 0x985c28, 0xac783c, 0xbc8c4c,
-			0xcca05c, 0xdcb468, 0xecc878, 0x841800, 0x983418, 0xac5030,
-			0xc06848, 0xd0805c, 0xe09470, 0xeca880, 0xfcbc94, 0x880000,
-			0x9c2020, 0xb03c3c, 0xc05858, 0xd07070, 0xe08888, 0xeca0a0,
-			0xfcb4b4, 0x78005c, 0x8c2074, 0xa03c88, 0xb0589c, 0xc070b0,
-			0xd084c0, 0xdc9cd0, 0xecb0e0, 0x480078, 0x602090, 0x783ca4,
-			0x8c58b8, 0xa070cc, 0xb484dc, 0xc49cec, 0xd4b0fc, 0x140084,
-			0x302098, 0x4c3cac, 0x6858c0, 0x7c70d0, 0x9488e0, 0xa8a0ec,
-			0xbcb4fc, 0x000088, 0x1c209c, 0x3840b0, 0x505cc0, 0x6874d0,
-			0x7c8ce0, 0x90a4ec, 0xa4b8fc, 0x00187c, 0x1c3890, 0x3854a8,
-			0x5070bc, 0x6888cc, 0x7c9cdc, 0x90b4ec, 0xa4c8fc, 0x002c5c,
-			0x1c4c78, 0x386890, 0x5084ac, 0x689cc0, 0x7cb4d4, 0x90cce8,
-			0xa4e0fc, 0x003c2c, 0x1c5c48, 0x387c64, 0x509c80, 0x68b494,
-			0x7cd0ac, 0x90e4c0, 0xa4fcd4, 0x003c00, 0x205c20, 0x407c40,
-			0x5c9c5c, 0x74b474, 0x8cd08c, 0xa4e4a4, 0xb8fcb8, 0x143800,
-			0x345c1c, 0x507c38, 0x6c9850, 0x84b468, 0x9ccc7c, 0xb4e490,
-			0xc8fca4, 0x2c3000, 0x4c501c, 0x687034, 0x848c4c, 0x9ca864,
-			0xb4c078, 0xccd488, 0xe0ec9c, 0x442800, 0x644818, 0x846830,
-			0xa08444, 0xb89c58, 0xd0b46c, 0xe8cc7c, 0xfce08c };
+			return palette[c >> 1];
+		}
+	}
+
+
+	// Opaque black, for blanking.
+	private static final int BLACK = 0xFF000000;
+
+	// Room for a few frames worth of audio samples (two per scanline).
+	private static final int AUDIO_BUFFER_SIZE = 2048;
 
 	// Got lazy. LUTs for the playfield registers.
 	private static final int normalPfBitsLUT[] = { M.BIT_4, M.BIT_4, M.BIT_4,
@@ -5,12 +5,14 @@ import java.util.ArrayList;
 
 import org.atari2600.core.Cartridge;
 import org.atari2600.core.Cpu;
+import org.atari2600.core.Governor;
 import org.atari2600.core.IOTimer;
 import org.atari2600.core.Memory;
 import org.atari2600.core.Pia;
 import org.atari2600.core.Ram;
 import org.atari2600.core.Tia;
 import org.atari2600.tv.TV;
+import org.atari2600.tv.TVStandard;
 import org.atari2600.util.M;
 
 public class Debugger {
@@ -19,12 +21,28 @@ public class Debugger {
 	private Cpu cpu;
 	private Cartridge cart;
 	private TV tv;
+	private TVStandard standard;
+	private Governor governor;
 
 	private ArrayList<Integer> breakpoints;
 
 	public Debugger(Cartridge cart, TV tv) {
+		this(cart, tv, TVStandard.NTSC);
+	}
+
+	/**
+	 * @param cart
+	 *            : The cartridge to debug.
+	 * @param tv
+	 *            : The TV the frames are sent to.
+	 * @param standard
+	 *            : The TV standard of the cartridge. Sets the frame size, the
+	 *            palette and the speed.
+	 */
+	public Debugger(Cartridge cart, TV tv, TVStandard standard) {
 		this.cart = cart;
 		this.tv = tv;
+		this.standard = standard;
 		reader = new Reader();
 		breakpoints = new ArrayList<>();
 
@@ -48,7 +66,7 @@ public class Debugger {
 		Cpu cpu = new Cpu();
 
 		Memory memory = new Memory();
-		Tia tia = new Tia();
+		Tia tia = new Tia(standard);
 		Pia pia = new Pia();
 		Ram ram = new Ram();
 		IOTimer io = new IOTimer();
@@ -68,13 +86,20 @@ public class Debugger {
 		// pia.setTimer(timer);
 
 		this.cpu = cpu;
-	}
 
-	private void waitFor(int cycles) {
-		for (int i = 0; i < cycles; i++) {
-			System.nanoTime();
+		governor = new Governor(standard.getFrameRate());
+	}
 
-			// while(System.nanoTime() - start < 25);
+	/**
+	 * Waits for the real machine's frame time if the last executed cycles
+	 * completed a frame.
+	 * 
+	 * @param frame
+	 *            : The frame count before executing them.
+	 */
+	private void waitFor(long frame) {
+		if (cpu.getMemory().getTia().getFrameCount() != frame) {
+			governor.pace();
 		}
 	}
 
@@ -166,14 +191,17 @@ public class Debugger {
 	public void resume() {
 		boolean breakpointReached;
 		int cycles;
+		long frame;
 
 		breakpointReached = false;
+		governor.resync();
 
 		// Execute until breakpoint
 		while (!breakpointReached) {
 			if (breakpoints.contains(cpu.getPc() & 0x0FFF)) {
 				breakpointReached = true;
 			} else {
+				frame = cpu.getMemory().getTia().getFrameCount();
 				cycles = cpu.executeNext();
 
 				if (!cpu.getHalted())
@@ -185,7 +213,7 @@ public class Debugger {
 					cpu.getMemory().getTia().executeNext();
 				}
 
-				waitFor(cycles);
+				waitFor(frame);
 			}
 		}
 	}
@@ -199,8 +227,12 @@ public class Debugger {
 	private void exe(int n) {
 		boolean breakpointReached = false;
 		int cycles = 0;
+		long frame;
+
+		governor.resync();
 
 		for (int i = 0; i < n && !breakpointReached; i++) {
+			frame = cpu.getMemory().getTia().getFrameCount();
 			cycles = cpu.executeNext();
 
 			if (!cpu.getHalted())
@@ -212,7 +244,7 @@ public class Debugger {
 				cpu.getMemory().getTia().executeNext();
 			}
 
-			waitFor(cycles);
+			waitFor(frame);
 
 			if (breakpoints.contains(cpu.getPc() & 0x0FFF)) {
 				breakpointReached = true;
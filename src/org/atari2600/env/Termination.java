@@ -0,0 +1,21 @@
+package org.atari2600.env;
+
+import org.atari2600.core.Atari2600;
+
+/**
+ * Decides when an episode is over, usually by looking at the RAM (lives,
+ * game over flag...). It is called by the worker threads of a VectorEnv, so
+ * it must not keep state shared between environments.
+ */
+public interface Termination {
+
+	/**
+	 * @param env
+	 *            : The index of the environment.
+	 * @param atari
+	 *            : Its machine, at the end of a step.
+	 * @return True if the episode is over.
+	 */
+	public boolean isTerminal(int env, Atari2600 atari);
+
+}
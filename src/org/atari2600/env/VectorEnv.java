@@ -0,0 +1,504 @@
+package org.atari2600.env;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.core.Tia;
+import org.atari2600.input.Input;
+import org.atari2600.tv.Observation;
+import org.atari2600.tv.TVFrame;
+import org.atari2600.tv.TVStandard;
+
+/**
+ * A batch of emulators running the same cartridge, stepped together for
+ * reinforcement learning. Each step takes one action per environment, runs
+ * every environment for a number of frames and leaves the observations, the
+ * RAM and the terminal flags in arrays that are allocated once and
+ * overwritten by every step.
+ * 
+ * Environments are split into fixed slices, one per worker thread, so each
+ * machine is always stepped by the same thread and stays in its caches.
+ * Results don't depend on the number of workers: each environment has its
+ * own random generator for sticky actions.
+ * 
+ * Actions are the 18 of the Arcade Learning Environment, in its order, on
+ * the left joystick.
+ * 
+ * Observations are full ARGB frames, reduced grayscale pictures worked out
+ * by the TIA while drawing (see setGrayscale), or just the RAM (see
+ * setRamOnly), which is the cheapest.
+ */
+public class VectorEnv {
+	public static final int NOOP = 0;
+	public static final int FIRE = 1;
+	public static final int UP = 2;
+	public static final int RIGHT = 3;
+	public static final int LEFT = 4;
+	public static final int DOWN = 5;
+	public static final int UPRIGHT = 6;
+	public static final int UPLEFT = 7;
+	public static final int DOWNRIGHT = 8;
+	public static final int DOWNLEFT = 9;
+	public static final int UPFIRE = 10;
+	public static final int RIGHTFIRE = 11;
+	public static final int LEFTFIRE = 12;
+	public static final int DOWNFIRE = 13;
+	public static final int UPRIGHTFIRE = 14;
+	public static final int UPLEFTFIRE = 15;
+	public static final int DOWNRIGHTFIRE = 16;
+	public static final int DOWNLEFTFIRE = 17;
+	public static final int ACTIONS = 18;
+
+	// Input word of each action.
+	private static final long[] ACTION_INPUTS = new long[ACTIONS];
+
+	static {
+		int[] dirs = { 0, 0, Input.P0_UP, Input.P0_RIGHT, Input.P0_LEFT,
+				Input.P0_DOWN, Input.P0_UP | Input.P0_RIGHT,
+				Input.P0_UP | Input.P0_LEFT, Input.P0_DOWN | Input.P0_RIGHT,
+				Input.P0_DOWN | Input.P0_LEFT };
+
+		for (int a = 0; a < ACTIONS; a++) {
+			boolean fire = a == FIRE || a >= UPFIRE;
+			int dir = a < UPFIRE ? dirs[a] : dirs[a - UPFIRE + UP];
+
+			ACTION_INPUTS[a] = Input.DEFAULT & ~dir & ~(fire ? Input.FIRE0 : 0);
+		}
+	}
+
+	private final Atari2600[] envs;
+	private final int frameSkip;
+	private final double sticky;
+
+	// State every episode starts from, and a buffer over it per environment.
+	private final byte[] initialState;
+	private final ByteBuffer[] resetBufs;
+
+	// Per environment: requested and last applied action, random generator
+	// state and frames played in the episode.
+	private final int[] actions, lastActions;
+	private final long[] rngs;
+	private final int[] episodeFrames;
+	private int maxEpisodeFrames;
+	private Termination termination;
+
+	// Outputs: either the ARGB frames or the grayscale observations.
+	private int obsSize;
+	private int[] observations;
+	private byte[] grayscale;
+	private boolean maxPool;
+	private final byte[] ram;
+	private final boolean[] terminals;
+
+	// Workers, each with a slice of the environments. The caller and the
+	// workers meet at start to begin a step and at done to end it.
+	private final Thread[] workers;
+	private final CyclicBarrier start, done;
+	private volatile boolean closed;
+	private volatile Throwable failure;
+
+	// Set when a step failed: the environments are left halfway and must be
+	// reset before stepping again.
+	private boolean failed;
+
+	/**
+	 * @param cart
+	 *            : The cartridge, shared by all the environments.
+	 * @param n
+	 *            : The number of environments.
+	 * @param threads
+	 *            : The number of worker threads. With 1 or less, steps run on
+	 *            the calling thread.
+	 * @param frameSkip
+	 *            : The frames run by each step with the same action. Only the
+	 *            last one is colored.
+	 * @param sticky
+	 *            : The probability of repeating the previous action instead
+	 *            of the new one, checked on every frame.
+	 * @param seed
+	 *            : The seed for the sticky actions.
+	 */
+	public VectorEnv(Cartridge cart, int n, int threads, int frameSkip,
+			double sticky, long seed) {
+		this(cart, n, threads, frameSkip, sticky, seed, TVStandard.NTSC);
+	}
+
+	/**
+	 * Same as the other constructor, for a cartridge of any TV standard.
+	 * 
+	 * @param standard
+	 *            : The TV standard of the cartridge. Sets the frame size and
+	 *            the palette of the observations.
+	 */
+	public VectorEnv(Cartridge cart, int n, int threads, int frameSkip,
+			double sticky, long seed, TVStandard standard) {
+		if (n < 1 || frameSkip < 1 || sticky < 0 || sticky >= 1) {
+			throw new IllegalArgumentException("Bad environment parameters");
+		}
+
+		this.frameSkip = frameSkip;
+		this.sticky = sticky;
+
+		envs = new Atari2600[n];
+		envs[0] = new Atari2600(cart, null, null, standard);
+		envs[0].getCpu().boot();
+
+		ByteBuffer buf = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+
+		envs[0].saveState(buf);
+		initialState = buf.array();
+		resetBufs = new ByteBuffer[n];
+
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				envs[i] = new Atari2600(cart, null, null, standard);
+			}
+
+			resetBufs[i] = ByteBuffer.wrap(initialState);
+		}
+
+		actions = new int[n];
+		lastActions = new int[n];
+		rngs = new long[n];
+		episodeFrames = new int[n];
+		maxEpisodeFrames = 108000;
+
+		for (int i = 0; i < n; i++) {
+			rngs[i] = mix(seed + i);
+		}
+
+		obsSize = TVFrame.WIDTH * envs[0].getStandard().getLines();
+		observations = new int[n * obsSize];
+		ram = new byte[n * 128];
+		terminals = new boolean[n];
+
+		int w = Math.min(threads, n);
+
+		if (w > 1) {
+			workers = new Thread[w];
+			start = new CyclicBarrier(w + 1);
+			done = new CyclicBarrier(w + 1);
+
+			for (int i = 0; i < w; i++) {
+				final int from = i * n / w, to = (i + 1) * n / w;
+
+				workers[i] = new Thread(new Runnable() {
+					public void run() {
+						work(from, to);
+					}
+				}, "VectorEnv-" + i);
+				workers[i].setDaemon(true);
+				workers[i].start();
+			}
+		} else {
+			workers = null;
+			start = null;
+			done = null;
+		}
+
+		reset();
+	}
+
+	/**
+	 * Switches the observations to grayscale pictures of the given size. The
+	 * TIA works them out directly and full frames are not stored any more.
+	 * 
+	 * @param width
+	 *            : The width of the observations (84 is usual).
+	 * @param height
+	 *            : The height of the observations (84 is usual).
+	 * @param maxPool
+	 *            : True to take the maximum of the last two frames of each
+	 *            step, which cancels sprite flicker. The last two frames are
+	 *            then rendered.
+	 */
+	public void setGrayscale(int width, int height, boolean maxPool) {
+		this.maxPool = maxPool;
+
+		for (Atari2600 atari : envs) {
+			Tia tia = atari.getCpu().getMemory().getTia();
+
+			tia.setObservation(Observation.of(atari.getStandard(), width,
+					height, maxPool));
+			tia.setFrameOutput(false);
+			atari.setRamOnly(false);
+		}
+
+		obsSize = width * height;
+		observations = null;
+		grayscale = new byte[envs.length * obsSize];
+	}
+
+	/**
+	 * Drops the picture observations: only the RAM is returned, and frames are
+	 * never colored.
+	 */
+	public void setRamOnly() {
+		for (Atari2600 atari : envs) {
+			atari.setRamOnly(true);
+		}
+
+		obsSize = 0;
+		observations = null;
+		grayscale = null;
+	}
+
+	/**
+	 * Starts a new episode in every environment. Also recovers from a failed
+	 * step.
+	 */
+	public void reset() {
+		for (int i = 0; i < envs.length; i++) {
+			resetEnv(i);
+			terminals[i] = false;
+		}
+
+		failed = false;
+	}
+
+	/**
+	 * Steps every environment. An environment whose episode ended in the
+	 * previous step is reset first.
+	 * 
+	 * If emulating an environment throws, the exception or error is thrown
+	 * from here once, and the environments are left partly stepped: reset()
+	 * must be called before stepping again.
+	 * 
+	 * @param actions
+	 *            : The action of each environment.
+	 */
+	public void step(int[] actions) {
+		if (failed) {
+			throw new IllegalStateException(
+					"A step failed: reset() before stepping again");
+		}
+
+		if (actions.length != envs.length) {
+			throw new IllegalArgumentException("One action per environment");
+		}
+
+		for (int i = 0; i < actions.length; i++) {
+			if (actions[i] < 0 || actions[i] >= ACTIONS) {
+				throw new IllegalArgumentException("Bad action: " + actions[i]);
+			}
+
+			this.actions[i] = actions[i];
+		}
+
+		if (workers == null) {
+			try {
+				stepRange(0, envs.length);
+			} catch (Throwable e) {
+				failed = true;
+				throw e;
+			}
+		} else {
+			await(start);
+			await(done);
+
+			if (failure != null) {
+				Throwable e = failure;
+
+				failure = null;
+				failed = true;
+
+				if (e instanceof Error) {
+					throw (Error) e;
+				}
+
+				throw (RuntimeException) e;
+			}
+		}
+	}
+
+	/**
+	 * Stops the worker threads. The environments can't be stepped afterwards.
+	 */
+	public void close() {
+		if (workers != null && !closed) {
+			closed = true;
+			await(start);
+
+			for (Thread worker : workers) {
+				try {
+					worker.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	// Workers ----------------------------------------------------
+
+	private void work(int from, int to) {
+		while (true) {
+			await(start);
+
+			if (closed) {
+				return;
+			}
+
+			// Anything thrown is handed to the caller: the worker must get
+			// to the barrier, or the caller would wait there forever.
+			try {
+				stepRange(from, to);
+			} catch (Throwable e) {
+				failure = e;
+			}
+
+			await(done);
+		}
+	}
+
+	private void stepRange(int from, int to) {
+		for (int i = from; i < to; i++) {
+			stepEnv(i);
+		}
+	}
+
+	private void stepEnv(int i) {
+		Atari2600 atari = envs[i];
+
+		if (terminals[i]) {
+			resetEnv(i);
+		}
+
+		// Frames from here on are rendered.
+		int firstRendered = frameSkip - (maxPool ? 2 : 1);
+
+		for (int f = 0; f < frameSkip; f++) {
+			if (sticky == 0 || nextDouble(i) >= sticky) {
+				lastActions[i] = actions[i];
+			}
+
+			atari.setInput(ACTION_INPUTS[lastActions[i]]);
+			atari.runFrame(f >= firstRendered);
+		}
+
+		episodeFrames[i] += frameSkip;
+
+		Tia tia = atari.getCpu().getMemory().getTia();
+
+		if (grayscale != null) {
+			System.arraycopy(tia.getObservation().getPixels(), 0, grayscale,
+					i * obsSize, obsSize);
+		} else if (observations != null) {
+			TVFrame frame = tia.getLastFrame();
+
+			System.arraycopy(frame.getPixels(), 0, observations, i * obsSize,
+					obsSize);
+		}
+
+		atari.copyRam(ram, i * 128);
+
+		terminals[i] = episodeFrames[i] >= maxEpisodeFrames
+				|| (termination != null && termination.isTerminal(i, atari));
+	}
+
+	private void resetEnv(int i) {
+		resetBufs[i].clear();
+		envs[i].loadState(resetBufs[i]);
+		envs[i].setInput(Input.DEFAULT);
+		lastActions[i] = NOOP;
+		episodeFrames[i] = 0;
+	}
+
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (InterruptedException | BrokenBarrierException e) {
+			throw new IllegalStateException("Environment workers stopped", e);
+		}
+	}
+
+	// Random numbers (xorshift64*, one generator per environment) ---------
+
+	private double nextDouble(int i) {
+		long x = rngs[i];
+
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		rngs[i] = x;
+
+		return ((x * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-53;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+
+		return z != 0 ? z : 1;
+	}
+
+	// Setters & getters --------------------------------
+
+	/**
+	 * @return The observations of the last step: the ARGB frame of each
+	 *         environment, one after another. Null in grayscale or RAM-only
+	 *         mode.
+	 */
+	public int[] getObservations() {
+		return observations;
+	}
+
+	/**
+	 * @return The grayscale observations of the last step, one after
+	 *         another. Null unless setGrayscale was called.
+	 */
+	public byte[] getGrayscale() {
+		return grayscale;
+	}
+
+	/**
+	 * @return The number of values of each observation.
+	 */
+	public int getObservationSize() {
+		return obsSize;
+	}
+
+	/**
+	 * @return The RAM of each environment after the last step, 128 bytes
+	 *         each.
+	 */
+	public byte[] getRam() {
+		return ram;
+	}
+
+	/**
+	 * @return Whether the episode of each environment ended in the last step.
+	 */
+	public boolean[] getTerminals() {
+		return terminals;
+	}
+
+	/**
+	 * @param maxEpisodeFrames
+	 *            : The frames after which an episode is cut.
+	 */
+	public void setMaxEpisodeFrames(int maxEpisodeFrames) {
+		this.maxEpisodeFrames = maxEpisodeFrames;
+	}
+
+	/**
+	 * @param termination
+	 *            : What ends an episode, besides its length.
+	 */
+	public void setTermination(Termination termination) {
+		this.termination = termination;
+	}
+
+	public int size() {
+		return envs.length;
+	}
+
+	public Atari2600 getEnv(int i) {
+		return envs[i];
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.atari2600.fleet;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.atari2600.core.Atari2600;
+
+/**
+ * Runs many machines on a small pool of carrier threads instead of one thread
+ * per machine. Each machine is a Session that emulates a single frame per
+ * task and then gives its carrier back until its next frame is due, so the
+ * carriers are only busy while some frame is actually being emulated. Paused
+ * sessions cost nothing but their memory, which is what lets a single JVM host
+ * thousands of mostly idle interactive sessions.
+ */
+public class Fleet {
+	private final ScheduledThreadPoolExecutor executor;
+	private final List<Session> sessions;
+	private final int carriers;
+
+	/**
+	 * @param carriers
+	 *            : The number of threads the sessions are run on. Usually the
+	 *            number of cores.
+	 */
+	public Fleet(int carriers) {
+		if (carriers < 1) {
+			throw new IllegalArgumentException("At least one carrier thread");
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+
+		this.carriers = carriers;
+		sessions = new CopyOnWriteArrayList<Session>();
+		executor = new ScheduledThreadPoolExecutor(carriers,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Fleet-"
+								+ count.getAndIncrement());
+
+						t.setDaemon(true);
+						return t;
+					}
+				});
+
+		// Paused sessions cancel their next frame; do not keep it queued.
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Boots a machine and starts running it in the fleet at the speed of its
+	 * TV standard (or as fast as possible while it is fast forwarding).
+	 * 
+	 * @param atari
+	 *            : The machine to run. It must not be running anywhere else.
+	 * @return The session running it.
+	 */
+	public Session start(Atari2600 atari) {
+		Session session = new Session(this, atari);
+
+		sessions.add(session);
+		atari.getCpu().boot();
+		session.resume();
+
+		return session;
+	}
+
+	/**
+	 * Stops every session and the carrier threads, waiting for the frames
+	 * being emulated to finish.
+	 */
+	public void shutdown() {
+		for (Session session : sessions) {
+			session.close();
+		}
+
+		executor.shutdown();
+
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	void remove(Session session) {
+		sessions.remove(session);
+	}
+
+	// Setters & getters --------------------------------
+
+	public ScheduledThreadPoolExecutor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @return The sessions that have not been closed.
+	 */
+	public List<Session> getSessions() {
+		return Collections.unmodifiableList(sessions);
+	}
+
+	public int getCarriers() {
+		return carriers;
+	}
+
+	/**
+	 * @return The sum of the frames emulated by the live sessions.
+	 */
+	public long getFrames() {
+		long frames = 0;
+
+		for (Session session : sessions) {
+			frames += session.getFrames();
+		}
+
+		return frames;
+	}
+
+}
@@ -0,0 +1,246 @@
+package org.atari2600.fleet;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.atari2600.core.Atari2600;
+
+/**
+ * A machine running in a Fleet. Every run emulates one frame and schedules the
+ * next one at the frame's deadline, keeping the pace the Governor keeps for a
+ * machine on its own thread, but without holding a thread while waiting. At
+ * most one frame of a session is queued or running at any time, so the
+ * machine is only ever touched by one carrier at once.
+ * 
+ * The statistics are written by the carrier running the session and can be
+ * read from any thread.
+ */
+public class Session implements Runnable {
+	// If we are late more than this number of frames we give up catching up.
+	private static final int MAX_LAG_FRAMES = 4;
+
+	private final Fleet fleet;
+	private final Atari2600 atari;
+	private final long period;
+
+	// Guarded by this.
+	private ScheduledFuture<?> pending;
+	private boolean running;
+	private boolean paused;
+	private boolean closed;
+
+	// Only touched by the carrier running the session.
+	private long deadline;
+
+	private volatile long frames;
+	private volatile long busyNanos;
+	private volatile long maxFrameNanos;
+	private volatile long lateFrames;
+	private volatile long lagNanos;
+	private volatile RuntimeException failure;
+
+	Session(Fleet fleet, Atari2600 atari) {
+		this.fleet = fleet;
+		this.atari = atari;
+		period = (long) (1000000000.0 / atari.getStandard().getFrameRate());
+		paused = true;
+	}
+
+	/**
+	 * Emulates one frame and schedules the next one. Called by the carriers.
+	 */
+	@Override
+	public void run() {
+		synchronized (this) {
+			pending = null;
+
+			if (paused || closed) {
+				return;
+			}
+
+			running = true;
+		}
+
+		long start = System.nanoTime();
+
+		if (deadline != 0) {
+			lagNanos = Math.max(0, start - deadline);
+		}
+
+		try {
+			atari.advance();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			failure = e;
+
+			synchronized (this) {
+				running = false;
+			}
+
+			close();
+			return;
+		}
+
+		long end = System.nanoTime();
+		long elapsed = end - start;
+
+		frames++;
+		busyNanos += elapsed;
+
+		if (elapsed > maxFrameNanos) {
+			maxFrameNanos = elapsed;
+		}
+
+		long delay;
+
+		if (atari.isFastForward()) {
+			deadline = 0;
+			delay = 0;
+		} else {
+			if (deadline == 0) {
+				// First frame: start counting from now.
+				deadline = end;
+			} else if (end - deadline > period * MAX_LAG_FRAMES) {
+				// Too late: forget the frames we missed.
+				lateFrames++;
+				deadline = end;
+			}
+
+			deadline += period;
+			delay = deadline - end;
+		}
+
+		synchronized (this) {
+			running = false;
+			schedule(delay);
+		}
+	}
+
+	/**
+	 * Stops running frames until resume() is called. The machine keeps its
+	 * state and takes no carrier time while paused. A frame being emulated
+	 * when this is called is finished.
+	 */
+	public synchronized void pause() {
+		paused = true;
+
+		if (pending != null) {
+			pending.cancel(false);
+			pending = null;
+		}
+	}
+
+	/**
+	 * Runs frames again after pause(). The pace starts over, so the time spent
+	 * paused is not caught up.
+	 */
+	public synchronized void resume() {
+		if (!paused || closed) {
+			return;
+		}
+
+		paused = false;
+
+		if (!running) {
+			deadline = 0;
+			schedule(0);
+		}
+	}
+
+	/**
+	 * Stops the session for good and removes it from the fleet.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+			pause();
+		}
+
+		fleet.remove(this);
+	}
+
+	/**
+	 * Queues the next frame, unless the session is stopped or already has a
+	 * frame queued or running. Must be called holding the lock.
+	 */
+	private void schedule(long delay) {
+		if (paused || closed || running || pending != null) {
+			return;
+		}
+
+		pending = fleet.getExecutor().schedule(this, Math.max(0, delay),
+				TimeUnit.NANOSECONDS);
+	}
+
+	// Setters & getters --------------------------------
+
+	public Atari2600 getAtari() {
+		return atari;
+	}
+
+	public synchronized boolean isPaused() {
+		return paused;
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return The number of frames emulated.
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return The time spent emulating frames, in nanoseconds.
+	 */
+	public long getBusyNanos() {
+		return busyNanos;
+	}
+
+	/**
+	 * @return The average time it takes to emulate a frame, in nanoseconds.
+	 */
+	public long getMeanFrameNanos() {
+		long n = frames;
+
+		return n == 0 ? 0 : busyNanos / n;
+	}
+
+	/**
+	 * @return The longest time it took to emulate a frame, in nanoseconds.
+	 */
+	public long getMaxFrameNanos() {
+		return maxFrameNanos;
+	}
+
+	/**
+	 * @return How late the last frame started after its deadline, in
+	 *         nanoseconds. Grows when the carriers are overloaded.
+	 */
+	public long getLagNanos() {
+		return lagNanos;
+	}
+
+	/**
+	 * @return The number of times the session fell so far behind that it gave
+	 *         up catching up.
+	 */
+	public long getLateFrames() {
+		return lateFrames;
+	}
+
+	/**
+	 * @return The exception that closed the session, or null.
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+
+}
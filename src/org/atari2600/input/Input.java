@@ -0,0 +1,116 @@
+package org.atari2600.input;
+
+/**
+ * Layout of an input word: the state of every controller and console switch
+ * packed into a long. Levels are the ones the hardware sees, so 0 means
+ * pressed (or, for the switches, the position marked with a 0 below).
+ * 
+ * <ul>
+ * <li>Bits 0-7: SWCHA, the joystick directions (P0 in the high nibble).</li>
+ * <li>Bits 8-15: SWCHB, the console switches.</li>
+ * <li>Bit 16: INPT4, P0 fire button.</li>
+ * <li>Bit 17: INPT5, P1 fire button.</li>
+ * <li>Bits 32-63: the positions of the four paddles, 8 bits each (paddle 0
+ * in the lowest byte). 0 is the position that charges fastest.</li>
+ * </ul>
+ * 
+ * Paddle fire buttons are read from SWCHA, like joystick directions: paddle 0
+ * uses P0_RIGHT, paddle 1 P0_LEFT, paddle 2 P1_RIGHT and paddle 3 P1_LEFT.
+ */
+public class Input {
+	public static final int SWCHA_SHIFT = 0;
+	public static final int SWCHB_SHIFT = 8;
+	public static final int FIRE0 = 1 << 16;
+	public static final int FIRE1 = 1 << 17;
+	public static final int PADDLE_SHIFT = 32;
+
+	// Joystick directions (SWCHA).
+	public static final int P0_RIGHT = 1 << 7;
+	public static final int P0_LEFT = 1 << 6;
+	public static final int P0_DOWN = 1 << 5;
+	public static final int P0_UP = 1 << 4;
+	public static final int P1_RIGHT = 1 << 3;
+	public static final int P1_LEFT = 1 << 2;
+	public static final int P1_DOWN = 1 << 1;
+	public static final int P1_UP = 1 << 0;
+
+	// Console switches (SWCHB). 0 while reset and select are pressed; 1 for
+	// color and for difficulty A.
+	public static final int RESET = 1 << (SWCHB_SHIFT + 0);
+	public static final int SELECT = 1 << (SWCHB_SHIFT + 1);
+	public static final int COLOR = 1 << (SWCHB_SHIFT + 3);
+	public static final int P0_DIFFICULTY = 1 << (SWCHB_SHIFT + 6);
+	public static final int P1_DIFFICULTY = 1 << (SWCHB_SHIFT + 7);
+
+	/**
+	 * Nothing pressed, color TV, both difficulties in B. SWCHB bits 2, 4 and 5
+	 * are not connected, so they are always read as 1.
+	 */
+	public static final long DEFAULT = (0xFF << SWCHA_SHIFT)
+			| (0x3F << SWCHB_SHIFT) | FIRE0 | FIRE1
+			| (0x80808080L << PADDLE_SHIFT);
+
+	/**
+	 * @param input
+	 *            : An input word.
+	 * @return The value read from SWCHA.
+	 */
+	public static int swcha(long input) {
+		return (int) (input >> SWCHA_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @param input
+	 *            : An input word.
+	 * @return The value read from SWCHB.
+	 */
+	public static int swchb(long input) {
+		return (int) (input >> SWCHB_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @param input
+	 *            : An input word.
+	 * @return The value read from INPT4 (bit 7 only).
+	 */
+	public static int inpt4(long input) {
+		return (input & FIRE0) != 0 ? 0x80 : 0;
+	}
+
+	/**
+	 * @param input
+	 *            : An input word.
+	 * @return The value read from INPT5 (bit 7 only).
+	 */
+	public static int inpt5(long input) {
+		return (input & FIRE1) != 0 ? 0x80 : 0;
+	}
+
+	/**
+	 * @param input
+	 *            : An input word.
+	 * @param paddle
+	 *            : The paddle (0 to 3).
+	 * @return The position of the paddle (0 to 255).
+	 */
+	public static int paddle(long input, int paddle) {
+		return (int) (input >>> (PADDLE_SHIFT + paddle * 8)) & 0xFF;
+	}
+
+	/**
+	 * @param input
+	 *            : An input word.
+	 * @param paddle
+	 *            : The paddle (0 to 3).
+	 * @param position
+	 *            : The new position of the paddle (0 to 255).
+	 * @return The input word with the paddle moved.
+	 */
+	public static long withPaddle(long input, int paddle, int position) {
+		int shift = PADDLE_SHIFT + paddle * 8;
+
+		return (input & ~(0xFFL << shift))
+				| ((long) (position & 0xFF) << shift);
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.atari2600.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the input word written by the UI (or a bot) from any thread. The
+ * emulation thread samples it at the start of every frame with a single
+ * volatile read, so it never locks nor allocates to get the input, and the
+ * input can't change in the middle of a frame.
+ */
+public class InputLatch {
+	private final AtomicLong word;
+
+	public InputLatch() {
+		word = new AtomicLong(Input.DEFAULT);
+	}
+
+	/**
+	 * Presses or releases buttons, directions, reset or select.
+	 * 
+	 * @param buttons
+	 *            : The bits of the buttons (for example Input.P0_UP |
+	 *            Input.FIRE0).
+	 * @param pressed
+	 *            : True to press them, false to release them.
+	 */
+	public void press(int buttons, boolean pressed) {
+		// Active low: pressing clears the bits.
+		set(buttons, !pressed);
+	}
+
+	/**
+	 * @param color
+	 *            : True for color, false for black and white.
+	 */
+	public void setColor(boolean color) {
+		set(Input.COLOR, color);
+	}
+
+	/**
+	 * @param player
+	 *            : The player (0 or 1).
+	 * @param a
+	 *            : True for difficulty A (pro), false for B (amateur).
+	 */
+	public void setDifficulty(int player, boolean a) {
+		set(player == 0 ? Input.P0_DIFFICULTY : Input.P1_DIFFICULTY, a);
+	}
+
+	/**
+	 * @param paddle
+	 *            : The paddle (0 to 3).
+	 * @param position
+	 *            : Its position, from 0 to 255.
+	 */
+	public void setPaddle(int paddle, int position) {
+		long old, value;
+
+		do {
+			old = word.get();
+			value = Input.withPaddle(old, paddle, position);
+		} while (!word.compareAndSet(old, value));
+	}
+
+	/**
+	 * Replaces the whole input word.
+	 * 
+	 * @param input
+	 *            : The new input word.
+	 */
+	public void setWord(long input) {
+		word.set(input);
+	}
+
+	/**
+	 * Sets or clears bits of the word, retrying if another thread changed it
+	 * at the same time.
+	 */
+	private void set(int bits, boolean high) {
+		long old, value;
+
+		do {
+			old = word.get();
+			value = high ? old | bits : old & ~bits;
+		} while (!word.compareAndSet(old, value));
+	}
+
+	/**
+	 * @return The current input word. Called by the emulation thread.
+	 */
+	public long sample() {
+		return word.get();
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.atari2600.input;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A recording of the input of a session: the input word when it started and
+ * every change after that, keyed by the frame and the CPU cycle (counted from
+ * boot) where it was applied. Since the emulation is deterministic, feeding
+ * the changes back at the same cycles, from the same starting state,
+ * reproduces the session exactly, at any speed.
+ * 
+ * File format (big endian): magic "A26I", version byte, start frame (long),
+ * start cycle (long), start input (long), number of changes (int), and then
+ * each change as frame (long), cycle (long) and input word (long).
+ */
+public class InputTimeline {
+	private static final int MAGIC = 0x41323649; // "A26I"
+	private static final byte VERSION = 2;
+
+	private long startFrame, startCycle;
+	private long startInput;
+
+	private long[] frames, cycles, inputs;
+	private int size;
+
+	public InputTimeline() {
+		frames = new long[256];
+		cycles = new long[256];
+		inputs = new long[256];
+		size = 0;
+		startInput = Input.DEFAULT;
+	}
+
+	/**
+	 * Starts the recording over, from the given point.
+	 * 
+	 * @param frame
+	 *            : The frame where the recording starts.
+	 * @param cycle
+	 *            : The cycle where the recording starts.
+	 * @param input
+	 *            : The input word at that point.
+	 */
+	public void begin(long frame, long cycle, long input) {
+		startFrame = frame;
+		startCycle = cycle;
+		startInput = input;
+		size = 0;
+	}
+
+	/**
+	 * Adds a change of input. Changes must be added in order.
+	 * 
+	 * @param frame
+	 *            : The frame where it happened.
+	 * @param cycle
+	 *            : The cycle where it happened.
+	 * @param input
+	 *            : The new input word.
+	 */
+	public void record(long frame, long cycle, long input) {
+		if (size == inputs.length) {
+			frames = Arrays.copyOf(frames, size * 2);
+			cycles = Arrays.copyOf(cycles, size * 2);
+			inputs = Arrays.copyOf(inputs, size * 2);
+		}
+
+		frames[size] = frame;
+		cycles[size] = cycle;
+		inputs[size] = input;
+		size++;
+	}
+
+	// Files ------------------------------------------------------
+
+	public void save(String path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(startFrame);
+			out.writeLong(startCycle);
+			out.writeLong(startInput);
+			out.writeInt(size);
+
+			for (int i = 0; i < size; i++) {
+				out.writeLong(frames[i]);
+				out.writeLong(cycles[i]);
+				out.writeLong(inputs[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param path
+	 *            : The file to read.
+	 * @return The timeline in the file.
+	 * @throws IOException
+	 *             If the file can't be read or is not a timeline.
+	 */
+	public static InputTimeline load(String path) throws IOException {
+		InputTimeline timeline = new InputTimeline();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(path)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not an input timeline");
+			}
+
+			if (in.readByte() != VERSION) {
+				throw new IOException("Unsupported input timeline version");
+			}
+
+			timeline.begin(in.readLong(), in.readLong(), in.readLong());
+
+			int n = in.readInt();
+
+			for (int i = 0; i < n; i++) {
+				timeline.record(in.readLong(), in.readLong(), in.readLong());
+			}
+		}
+
+		return timeline;
+	}
+
+	// Getters ----------------------------------------------------
+
+	public long getStartFrame() {
+		return startFrame;
+	}
+
+	public long getStartCycle() {
+		return startCycle;
+	}
+
+	public long getStartInput() {
+		return startInput;
+	}
+
+	/**
+	 * @return The number of changes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long getFrame(int i) {
+		return frames[i];
+	}
+
+	public long getCycle(int i) {
+		return cycles[i];
+	}
+
+	public long getInput(int i) {
+		return inputs[i];
+	}
+
+}
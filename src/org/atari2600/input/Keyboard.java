@@ -0,0 +1,84 @@
+package org.atari2600.input;
+
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+
+/**
+ * Plays with the keyboard: arrows and space are the left joystick, F1 is
+ * select, F2 reset, F3 and F4 set color or black and white, and F5 to F8 set
+ * the difficulty switches to A or B.
+ */
+public class Keyboard extends KeyAdapter {
+	private final InputLatch latch;
+
+	public Keyboard(InputLatch latch) {
+		this.latch = latch;
+	}
+
+	@Override
+	public void keyPressed(KeyEvent e) {
+		key(e.getKeyCode(), true);
+	}
+
+	@Override
+	public void keyReleased(KeyEvent e) {
+		key(e.getKeyCode(), false);
+	}
+
+	private void key(int code, boolean pressed) {
+		switch (code) {
+		case KeyEvent.VK_UP:
+			latch.press(Input.P0_UP, pressed);
+			break;
+
+		case KeyEvent.VK_DOWN:
+			latch.press(Input.P0_DOWN, pressed);
+			break;
+
+		case KeyEvent.VK_LEFT:
+			latch.press(Input.P0_LEFT, pressed);
+			break;
+
+		case KeyEvent.VK_RIGHT:
+			latch.press(Input.P0_RIGHT, pressed);
+			break;
+
+		case KeyEvent.VK_SPACE:
+			latch.press(Input.FIRE0, pressed);
+			break;
+
+		case KeyEvent.VK_F1:
+			latch.press(Input.SELECT, pressed);
+			break;
+
+		case KeyEvent.VK_F2:
+			latch.press(Input.RESET, pressed);
+			break;
+
+		case KeyEvent.VK_F3:
+		case KeyEvent.VK_F4:
+			if (pressed) {
+				latch.setColor(code == KeyEvent.VK_F3);
+			}
+			break;
+
+		case KeyEvent.VK_F5:
+		case KeyEvent.VK_F6:
+			if (pressed) {
+				latch.setDifficulty(0, code == KeyEvent.VK_F5);
+			}
+			break;
+
+		case KeyEvent.VK_F7:
+		case KeyEvent.VK_F8:
+			if (pressed) {
+				latch.setDifficulty(1, code == KeyEvent.VK_F7);
+			}
+			break;
+
+		default:
+			break;
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package org.atari2600.test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.tv.TV;
+
+/**
+ * Checks that the steady-state loop does not allocate: runs each ROM of a
+ * directory for a while to get past the boot code and the JIT warm-up, then
+ * measures the bytes the thread allocates over some more frames, rendered
+ * (to a TV that is not shown), not rendered and in RAM-only mode. It fails if
+ * any ROM allocates more than the budget per frame, that is, more than the
+ * budget times the frames in a window.
+ * 
+ * The frames are measured in WINDOWS windows and the smallest one counts:
+ * the JIT may allocate once in a while (when it deoptimizes code, for
+ * example), while an allocation in the loop shows in every window.
+ * 
+ * Usage: AllocationCheck [-budget bytes] [-warmup frames] [-frames frames]
+ * [romdir], where -frames is the length of each window.
+ */
+public class AllocationCheck {
+	private static final int WINDOWS = 3;
+	public static void main(String args[]) {
+		long budget = 0;
+		int warmup = 600;
+		int frames = 200;
+		File dir = new File("roms");
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-budget":
+				budget = Long.parseLong(args[++i]);
+				break;
+
+			case "-warmup":
+				warmup = Integer.parseInt(args[++i]);
+				break;
+
+			case "-frames":
+				frames = Integer.parseInt(args[++i]);
+				break;
+
+			default:
+				dir = new File(args[i]);
+			}
+		}
+
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+
+		if (!bean.isThreadAllocatedMemorySupported()) {
+			System.out.println("Allocation measuring not supported");
+			System.exit(2);
+		}
+
+		bean.setThreadAllocatedMemoryEnabled(true);
+
+		File[] roms = dir.listFiles((d, name) -> name.endsWith(".bin"));
+		String[] modes = { "render", "skip", "ramonly" };
+		long id = Thread.currentThread().getId();
+		int failed = 0;
+
+		Arrays.sort(roms);
+
+		for (File rom : roms) {
+			StringBuilder line = new StringBuilder(rom.getName());
+			boolean ok = true;
+
+			for (String mode : modes) {
+				Atari2600 atari = new Atari2600(new Cartridge(rom.getPath()),
+						new TV());
+				boolean render = !mode.equals("skip");
+
+				atari.setRamOnly(mode.equals("ramonly"));
+				atari.getCpu().boot();
+
+				for (int f = 0; f < warmup; f++) {
+					atari.runFrame(render);
+				}
+
+				long least = Long.MAX_VALUE;
+
+				for (int w = 0; w < WINDOWS; w++) {
+					long before = bean.getThreadAllocatedBytes(id);
+
+					for (int f = 0; f < frames; f++) {
+						atari.runFrame(render);
+					}
+
+					least = Math.min(least,
+							bean.getThreadAllocatedBytes(id) - before);
+				}
+
+				ok &= least <= budget * frames;
+				line.append(' ').append(mode).append('=').append(least)
+						.append("B/").append(frames).append("frames");
+			}
+
+			if (!ok) {
+				failed++;
+				line.append(" OVER BUDGET");
+			}
+
+			System.out.println(line);
+		}
+
+		System.out.printf("%d ROMs, %d over the budget of %d bytes/frame%n",
+				roms.length, failed, budget);
+		System.exit(failed == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,404 @@
+package org.atari2600.test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.atari2600.batch.Batch;
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.core.Cpu;
+import org.atari2600.core.Memory;
+import org.atari2600.core.Ram;
+import org.atari2600.core.Tia;
+import org.atari2600.input.Input;
+import org.atari2600.tv.TVFrame;
+import org.atari2600.tv.TVStandard;
+import org.atari2600.util.M;
+
+/**
+ * Checks that a Batch runs its lanes exactly as single machines: each bundled
+ * ROM is run on a batch and on as many Atari2600 instances, every lane with
+ * its own random input, and the saved state of every lane must equal that of
+ * its machine after every frame, as must the rendered frames.
+ *
+ * Then every opcode is run from random registers and RAM, and random
+ * cartridges (random bytes, or random writes to the TIA, some from shuffled
+ * TIA counters) are run an instruction at a time, each on a single lane and
+ * on a machine, to go through opcodes, registers and drawing paths the ROMs
+ * don't use. States must be equal, and an instruction that fails on the
+ * machine must fail on the lane too.
+ *
+ * Usage: BatchCheck [romdir]
+ */
+public class BatchCheck {
+	private static final int LANES = 5;
+	private static final int FRAMES = 150;
+	private static final int CARTS = 200;
+	private static final int STEPS = 20000;
+	private static final int OPCODE_RUNS = 64;
+
+	public static void main(String args[]) {
+		File dir = new File(args.length > 0 ? args[0] : "roms");
+		File[] roms = dir.listFiles((d, name) -> name.endsWith(".bin"));
+		int failed = 0;
+
+		if (roms == null || roms.length == 0) {
+			System.out.println("No ROMs found in " + dir);
+			System.exit(2);
+		}
+
+		Arrays.sort(roms);
+
+		for (File rom : roms) {
+			failed += checkRom(rom.getPath());
+		}
+
+		// Random code writes to the cartridge, which the machine reports.
+		PrintStream out = System.out;
+
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		int fuzzFailed;
+
+		try {
+			fuzzFailed = checkOpcodes() + checkRandom();
+		} finally {
+			System.setOut(out);
+		}
+
+		if (fuzzFailed > 0) {
+			System.out.println(fuzzFailed + " random cartridges differ");
+		}
+
+		failed += fuzzFailed;
+
+		System.out.println(failed == 0 ? "Batch lanes match single machines"
+				: failed + " checks failed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Runs a ROM on a batch and on single machines, comparing after every
+	 * frame.
+	 *
+	 * @return 1 if a lane differs, 0 otherwise.
+	 */
+	private static int checkRom(String rom) {
+		Cartridge cart = new Cartridge(rom);
+		Batch batch = new Batch(cart, LANES, TVStandard.NTSC);
+		Atari2600[] single = new Atari2600[LANES];
+		Random random = new Random(rom.hashCode());
+		ByteBuffer a = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+		ByteBuffer b = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+		int size = TVFrame.WIDTH * TVStandard.NTSC.getLines();
+
+		batch.boot();
+
+		for (int l = 0; l < LANES; l++) {
+			single[l] = new Atari2600(cart, null);
+			single[l].getCpu().boot();
+		}
+
+		for (int frame = 0; frame < FRAMES; frame++) {
+			boolean render = frame % 3 == 0;
+
+			for (int l = 0; l < LANES; l++) {
+				long input = randomInput(random);
+
+				batch.setInput(l, input);
+				single[l].setInput(input);
+				single[l].runFrame(render);
+			}
+
+			batch.runFrame(render);
+
+			for (int l = 0; l < LANES; l++) {
+				a.clear();
+				b.clear();
+				batch.saveState(l, a);
+				single[l].saveState(b);
+				a.flip();
+				b.flip();
+
+				if (!a.equals(b)) {
+					System.out.println(rom + ": lane " + l + " differs at frame "
+							+ frame + ", byte " + a.mismatch(b));
+					return 1;
+				}
+
+				if (render
+						&& !Arrays.equals(batch.getPixels(), l * size, (l + 1)
+								* size, single[l].getCpu().getMemory().getTia()
+								.getLastFrame().getPixels(), 0, size)) {
+					System.out.println(rom + ": lane " + l
+							+ " drew another frame " + frame);
+					return 1;
+				}
+			}
+		}
+
+		// A lane handed to a machine and back must carry on the same.
+		a.clear();
+		batch.saveState(0, a);
+		a.flip();
+		single[1].loadState(a);
+		a.rewind();
+		batch.loadState(1, a);
+		batch.runFrame(false);
+		single[1].runFrame(false);
+		a.clear();
+		b.clear();
+		batch.saveState(1, a);
+		single[1].saveState(b);
+		a.flip();
+		b.flip();
+
+		if (!a.equals(b)) {
+			System.out.println(rom + ": loaded lane differs");
+			return 1;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @return Mostly the default input, sometimes a random joystick, buttons,
+	 *         switches and paddles.
+	 */
+	private static long randomInput(Random random) {
+		if (random.nextInt(4) != 0) {
+			return Input.DEFAULT;
+		}
+
+		return random.nextLong() & 0xFFFFFFFFFFL;
+	}
+
+	/**
+	 * Runs every opcode on a lane and on a machine from random registers and
+	 * RAM, followed by a few instructions of random bytes.
+	 *
+	 * @return The number of runs where they differ.
+	 */
+	private static int checkOpcodes() {
+		Random random = new Random(6502);
+		ByteBuffer state = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+		int cpu = 21;
+		int ram = cpu + Cpu.STATE_SIZE + Memory.STATE_SIZE;
+		int failed = 0;
+
+		for (int op = 0; op < 256; op++) {
+			for (int run = 0; run < OPCODE_RUNS; run++) {
+				Cartridge cart = randomCartridge(random);
+				Atari2600 single = new Atari2600(cart, null);
+
+				cart.mem[0xFFC] = 0x00;
+				cart.mem[0xFFD] = 0xF0;
+				cart.mem[0] = op;
+				single.getCpu().boot();
+
+				// SP, A, X, Y and the flags (not halted), after the PC.
+				state.clear();
+				single.saveState(state);
+
+				for (int i = 0; i < 4; i++) {
+					state.putShort(cpu + 4 + 2 * i, (short) random.nextInt(256));
+				}
+
+				state.putShort(cpu + 13, (short) random.nextInt(0x80));
+
+				for (int i = 0; i < Ram.STATE_SIZE; i++) {
+					state.put(ram + i, (byte) random.nextInt(256));
+				}
+
+				state.flip();
+				single.loadState(state);
+
+				Batch batch = new Batch(cart, 1, TVStandard.NTSC);
+
+				batch.getTia().setRender(true);
+				state.rewind();
+				batch.loadState(0, state);
+
+				if (differ(single, batch, 4)) {
+					failed++;
+					System.err.println("Opcode " + Integer.toHexString(op)
+							+ ", run " + run + " differs");
+				}
+			}
+		}
+
+		return failed;
+	}
+
+	/**
+	 * Steps a machine and a lane, comparing their states after each step.
+	 *
+	 * @return Whether they differ, or only one of them failed.
+	 */
+	private static boolean differ(Atari2600 single, Batch batch, int steps) {
+		ByteBuffer a = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+		ByteBuffer b = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+
+		for (int i = 0; i < steps; i++) {
+			String error = null, batchError = null;
+
+			try {
+				single.step();
+			} catch (RuntimeException e) {
+				error = name(e);
+			}
+
+			try {
+				batch.step(0);
+			} catch (RuntimeException e) {
+				batchError = name(e);
+			}
+
+			if (error != null || batchError != null) {
+				if (error == null || !error.equals(batchError)) {
+					System.err.println("Step " + i + ": " + error + " vs "
+							+ batchError);
+					return true;
+				}
+
+				return false;
+			}
+
+			a.clear();
+			b.clear();
+			batch.saveState(0, a);
+			single.saveState(b);
+			a.flip();
+			b.flip();
+
+			if (!a.equals(b)) {
+				System.err.println("Step " + i + ", byte " + a.mismatch(b));
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Runs random cartridges on a lane and on a machine, an instruction at a
+	 * time.
+	 *
+	 * @return The number of cartridges where they differ.
+	 */
+	private static int checkRandom() {
+		Random random = new Random(2600);
+		ByteBuffer b = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+		int failed = 0;
+
+		for (int c = 0; c < CARTS; c++) {
+			Cartridge cart = c % 2 == 0 ? randomCartridge(random)
+					: tiaCartridge(random);
+			Batch batch = new Batch(cart, 1, TVStandard.NTSC);
+			Atari2600 single = new Atari2600(cart, null);
+			long input = randomInput(random);
+
+			// Colors are looked up in the palette, which may fail too.
+			batch.getTia().setRender(true);
+			batch.boot();
+			single.getCpu().boot();
+			batch.setInput(0, input);
+			single.setInput(input);
+
+			// Code never sets the size counters of players and missiles, nor
+			// HMOVE without a write: start from shuffled ones.
+			if (random.nextBoolean()) {
+				b.clear();
+				single.saveState(b);
+				shuffleTia(random, b);
+				b.flip();
+				single.loadState(b);
+				b.rewind();
+				batch.loadState(0, b);
+			}
+
+			if (differ(single, batch, STEPS)) {
+				failed++;
+				System.err.println("Cartridge " + c + " differs");
+			}
+		}
+
+		return failed;
+	}
+
+	/**
+	 * @return A cartridge of random bytes, starting in the cartridge.
+	 */
+	private static Cartridge randomCartridge(Random random) {
+		Cartridge cart = new Cartridge();
+
+		for (int i = 0; i < cart.mem.length; i++) {
+			cart.mem[i] = random.nextInt(256);
+		}
+
+		cart.mem[0xFFD] |= 0x10;
+
+		return cart;
+	}
+
+	/**
+	 * @return A cartridge that writes random values to random TIA registers
+	 *         (LDA #, STA zp) in a loop, with a WSYNC now and then.
+	 */
+	private static Cartridge tiaCartridge(Random random) {
+		Cartridge cart = new Cartridge();
+		int pc = 0;
+
+		while (pc < 0xF00) {
+			cart.mem[pc++] = 0xA9; // LDA #
+			cart.mem[pc++] = random.nextInt(256);
+			cart.mem[pc++] = 0x85; // STA zp
+			cart.mem[pc++] = random.nextInt(8) == 0 ? M.WSYNC : random
+					.nextInt(M.CXM0P);
+		}
+
+		cart.mem[pc++] = 0x4C; // JMP $F000
+		cart.mem[pc++] = 0x00;
+		cart.mem[pc++] = 0xF0;
+		cart.mem[0xFFC] = 0x00;
+		cart.mem[0xFFD] = 0xF0;
+
+		return cart;
+	}
+
+	/**
+	 * Sets random object counters, strobes and TIA registers in a state
+	 * written by Atari2600.saveState() (see Tia.saveState() for the layout).
+	 */
+	private static void shuffleTia(Random random, ByteBuffer state) {
+		int tia = Atari2600.STATE_SIZE - Tia.STATE_SIZE;
+
+		// After the beam, frame, line and paddle counters.
+		for (int i = 0; i < 5; i++) {
+			state.put(tia + 30 + i, (byte) random.nextInt(9));
+		}
+
+		state.putShort(tia + 40, (short) random.nextInt(0x200));
+
+		for (int i = 0; i < M.CXM0P; i++) {
+			state.put(tia + 45 + i, (byte) random.nextInt(256));
+		}
+	}
+
+	/**
+	 * @return The name of the exception class. Lanes check indexes that would
+	 *         reach another lane, so they fail with IndexOutOfBoundsException
+	 *         where the machine fails on its own arrays.
+	 */
+	private static String name(RuntimeException e) {
+		if (e instanceof IndexOutOfBoundsException) {
+			return IndexOutOfBoundsException.class.getName();
+		}
+
+		return e.getClass().getName();
+	}
+}
@@ -0,0 +1,123 @@
+package org.atari2600.test;
+
+import java.nio.ByteBuffer;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.core.Rewind;
+import org.atari2600.input.InputLatch;
+import org.atari2600.tv.Observation;
+import org.atari2600.tv.TVStandard;
+
+/**
+ * Checks that a fork reused from the pool behaves like a new one: a fork is
+ * given every per-session setting there is, released, and forked again. The
+ * reused fork must have none of those settings, and must run to the same
+ * state as a fork that was not reused. A second release must fail, and the
+ * pool must keep the released forks of each standard apart.
+ * 
+ * Usage: ForkCheck [rom]
+ */
+public class ForkCheck {
+	private static final int FRAMES = 120;
+
+	public static void main(String args[]) {
+		String rom = args.length > 0 ? args[0] : "roms/boing26.bin";
+		Atari2600 parent = new Atari2600(new Cartridge(rom), null);
+		int failed = 0;
+
+		parent.getCpu().boot();
+
+		for (int i = 0; i < 60; i++) {
+			parent.runFrame(true);
+		}
+
+		// Dirty a fork with another session's settings and give it back.
+		Atari2600 used = parent.fork();
+		InputLatch latch = new InputLatch();
+
+		latch.setWord(0);
+		used.setInputLatch(latch);
+		used.setRewind(new Rewind(used, 1, 8, 1 << 20));
+		used.setRunAhead(2);
+		used.setRamOnly(true);
+		used.getCpu().getMemory().getTia().setObservation(Observation.of(
+				TVStandard.NTSC, 84, 84, false));
+		used.getCpu().getMemory().getTia().setFrameOutput(false);
+		used.getGovernor().setEnabled(false);
+
+		for (int i = 0; i < 10; i++) {
+			used.advance();
+		}
+
+		used.release();
+
+		boolean twice = false;
+
+		try {
+			used.release();
+		} catch (IllegalStateException e) {
+			twice = true;
+		}
+
+		failed += check("double release", twice);
+
+		Atari2600 reused = parent.fork();
+		Atari2600 fresh = parent.fork();
+
+		if (reused != used) {
+			System.out.println("The pool did not return the released fork");
+			System.exit(2);
+		}
+
+		failed += check("input latch", reused.getInputLatch() == null);
+		failed += check("rewind", reused.getRewind() == null);
+		failed += check("run-ahead", reused.getRunAhead() == 0);
+		failed += check("RAM-only", !reused.isRamOnly());
+		failed += check("observation", reused.getCpu().getMemory().getTia()
+				.getObservation() == null);
+		failed += check("frame output", reused.getCpu().getMemory()
+				.getTia().isFrameOutput());
+		failed += check("governor", reused.getGovernor().isEnabled());
+		failed += check("metrics",
+				reused.getMetrics().snapshot().getFrames() == 0);
+
+		for (int i = 0; i < FRAMES; i++) {
+			reused.advance();
+			fresh.advance();
+		}
+
+		ByteBuffer a = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+		ByteBuffer b = ByteBuffer.allocate(Atari2600.STATE_SIZE);
+
+		reused.saveState(a);
+		fresh.saveState(b);
+		a.flip();
+		b.flip();
+
+		failed += check("state after " + FRAMES + " frames", a.equals(b));
+		failed += check("last frame", reused.getCpu().getMemory().getTia()
+				.getLastFrame().hash() == fresh.getCpu().getMemory().getTia()
+				.getLastFrame().hash());
+
+		// A fork of another standard must neither take nor drop it.
+		Atari2600 pal = new Atari2600(new Cartridge(rom), null, null,
+				TVStandard.PAL);
+
+		fresh.release();
+		failed += check("PAL fork", pal.fork() != fresh);
+		failed += check("pool per standard", parent.fork() == fresh);
+
+		System.out.println(failed == 0 ? "Reused fork ok" : failed
+				+ " checks failed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	private static int check(String what, boolean ok) {
+		if (!ok) {
+			System.out.println(what + " FAILED");
+		}
+
+		return ok ? 0 : 1;
+	}
+}
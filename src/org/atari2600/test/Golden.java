@@ -0,0 +1,206 @@
+package org.atari2600.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.core.Tia;
+import org.atari2600.input.Input;
+
+/**
+ * Regression check over the bundled ROMs: runs each ROM for a fixed number of
+ * frames with a fixed input script, hashes every frame and compares the
+ * hashes with the golden ones stored in roms/golden.txt. The ROMs are run in
+ * parallel. Any change in the picture makes it fail, telling the first frame
+ * that differs.
+ * 
+ * The golden file has a "rom first last hash" line for each run of equal
+ * frames. The hashes were captured from this emulator, not from real
+ * hardware nor from the original code (which did not run every ROM), so the
+ * check catches changes, not existing bugs.
+ * 
+ * Usage: Golden [-update] [romdir]. With -update the golden file is written
+ * from the current emulator instead of checked; do it only after making sure
+ * the new frames are right.
+ */
+public class Golden {
+	// Frames hashed per ROM. Long enough for the animated ROMs to go through
+	// their cycle, and for the input script.
+	public static final int FRAMES = 600;
+
+	// Frames each input of the script is held.
+	private static final int SEGMENT = 30;
+
+	// After the first SEGMENT frames with nothing pressed, each of these is
+	// held for SEGMENT frames (pressed or switched, the rest as in DEFAULT),
+	// and then nothing again. Most of the ROMs only react to the color switch,
+	// but it shows the input paths too.
+	private static final long[] SCRIPT = { Input.P0_RIGHT, Input.P0_LEFT,
+			Input.P0_DOWN, Input.P0_UP, Input.FIRE0, Input.P1_RIGHT,
+			Input.P1_LEFT, Input.P1_DOWN, Input.P1_UP, Input.FIRE1,
+			Input.SELECT, Input.RESET, Input.COLOR, Input.P0_DIFFICULTY,
+			Input.P1_DIFFICULTY };
+
+	public static void main(String args[]) throws IOException {
+		boolean update = false;
+		File dir = new File("roms");
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-update")) {
+				update = true;
+			} else {
+				dir = new File(args[i]);
+			}
+		}
+
+		File golden = new File(dir, "golden.txt");
+		File[] roms = dir.listFiles((d, name) -> name.endsWith(".bin"));
+
+		Arrays.sort(roms);
+
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime
+				.getRuntime().availableProcessors());
+		Map<String, long[]> actual = new LinkedHashMap<String, long[]>();
+
+		try {
+			List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+
+			for (File rom : roms) {
+				results.add(pool.submit(() -> hashes(rom)));
+			}
+
+			for (int i = 0; i < roms.length; i++) {
+				actual.put(roms[i].getName(), results.get(i).get());
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (update) {
+			save(golden, actual);
+			System.out.println("Written " + golden);
+			return;
+		}
+
+		Map<String, long[]> expected = load(golden);
+		int failed = 0;
+
+		for (Map.Entry<String, long[]> e : actual.entrySet()) {
+			String rom = e.getKey();
+			long[] h = e.getValue();
+			long[] g = expected.get(rom);
+
+			if (g == null) {
+				failed++;
+				System.out.println(rom + " NO GOLDEN HASHES");
+				continue;
+			}
+
+			int f = 0;
+
+			while (f < FRAMES && h[f] == g[f]) {
+				f++;
+			}
+
+			if (f < FRAMES) {
+				failed++;
+				System.out.printf("%s FAILED at frame %d: %016x, expected "
+						+ "%016x%n", rom, f, h[f], g[f]);
+			} else {
+				System.out.println(rom + " ok");
+			}
+		}
+
+		System.out.printf("%d ROMs, %d failed%n", actual.size(), failed);
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * @return The input of the script for a frame.
+	 */
+	public static long input(int frame) {
+		int step = frame / SEGMENT - 1;
+
+		if (step < 0 || step >= SCRIPT.length) {
+			return Input.DEFAULT;
+		}
+
+		// Each step flips one bit from its default: buttons, directions and
+		// the color switch are 1 when idle, and pressing or setting B/W
+		// clears them; the difficulties are 0 (B), and setting A sets them.
+		return Input.DEFAULT ^ SCRIPT[step];
+	}
+
+	/**
+	 * Runs a ROM from power on with the input script and hashes every frame.
+	 */
+	private static long[] hashes(File rom) {
+		Atari2600 atari = new Atari2600(new Cartridge(rom.getPath()), null);
+		Tia tia = atari.getCpu().getMemory().getTia();
+		long[] h = new long[FRAMES];
+
+		atari.getCpu().boot();
+
+		for (int f = 0; f < FRAMES; f++) {
+			atari.setInput(input(f));
+			atari.runFrame(true);
+			h[f] = tia.getLastFrame().hash();
+		}
+
+		return h;
+	}
+
+	private static void save(File golden, Map<String, long[]> hashes)
+			throws IOException {
+		try (PrintWriter out = new PrintWriter(golden)) {
+			for (Map.Entry<String, long[]> e : hashes.entrySet()) {
+				long[] h = e.getValue();
+				int first = 0;
+
+				for (int f = 1; f <= h.length; f++) {
+					if (f == h.length || h[f] != h[first]) {
+						out.printf("%s %d %d %016x%n", e.getKey(), first,
+								f - 1, h[first]);
+						first = f;
+					}
+				}
+			}
+		}
+	}
+
+	private static Map<String, long[]> load(File golden) throws IOException {
+		Map<String, long[]> hashes = new LinkedHashMap<String, long[]>();
+
+		for (String line : Files.readAllLines(golden.toPath())) {
+			String[] f = line.trim().split(" ");
+
+			if (f.length != 4) {
+				continue;
+			}
+
+			long[] h = hashes.computeIfAbsent(f[0], k -> new long[FRAMES]);
+			int last = Math.min(Integer.parseInt(f[2]), FRAMES - 1);
+
+			for (int i = Integer.parseInt(f[1]); i <= last; i++) {
+				h[i] = Long.parseUnsignedLong(f[3], 16);
+			}
+		}
+
+		return hashes;
+	}
+}
@@ -3,17 +3,61 @@ package org.atari2600.test;
 import java.awt.Container;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
 
 import javax.swing.JFrame;
 
+import org.atari2600.audio.Speaker;
 import org.atari2600.core.Atari2600;
 import org.atari2600.core.Cartridge;
 import org.atari2600.debug.Debugger;
+import org.atari2600.input.InputLatch;
+import org.atari2600.input.InputTimeline;
+import org.atari2600.input.Keyboard;
 import org.atari2600.tv.TV;
+import org.atari2600.tv.TVStandard;
 
 public class Main {
 	public static void main(String args[]) {
-		TV tv = new TV();
+		TVStandard standard = TVStandard.NTSC;
+		boolean debug = false;
+		String record = null, replay = null;
+		int runAhead = 0;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-d":
+				debug = true;
+				break;
+
+			case "-pal":
+				standard = TVStandard.PAL;
+				break;
+
+			case "-secam":
+				standard = TVStandard.SECAM;
+				break;
+
+			case "-record":
+				record = args[++i];
+				break;
+
+			case "-replay":
+				replay = args[++i];
+				break;
+
+			case "-runahead":
+				runAhead = Integer.parseInt(args[++i]);
+				break;
+
+			default:
+				System.out.println("Ein?");
+				return;
+			}
+		}
+
+		TV tv = new TV(standard);
+		Speaker speaker = new Speaker();
 		// Cartridge cart = new Cartridge("roms/kernel_15.bin");
 		// Cartridge cart = new Cartridge("roms/3_Bars_Background.bin");
 		// Cartridge cart = new Cartridge("roms/sp.bin");
@@ -25,13 +69,38 @@ public class Main {
 		// Cartridge cart = new Cartridge("roms/asymmetrical2.bin");
 		// Cartridge cart = new Cartridge("roms/asymmetrical.bin");
 		Cartridge cart = new Cartridge("roms/heart_color.bin");
-		Atari2600 atari = new Atari2600(cart, tv);
+		final Atari2600 atari = new Atari2600(cart, tv, speaker, standard);
+		final InputTimeline timeline = new InputTimeline();
+		final String recordPath = record;
+		InputLatch latch = new InputLatch();
+
+		atari.setInputLatch(latch);
+		atari.setRunAhead(runAhead);
+
+		if (record != null) {
+			atari.record(timeline);
+		} else if (replay != null) {
+			try {
+				atari.replay(InputTimeline.load(replay));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
 
 		JFrame frame = new JFrame();
 		frame.setTitle("Atari 2600");
-		frame.setSize(228 * 3, 262 * 2);
+		frame.setSize(228 * 3, standard.getLines() * 2);
 		frame.addWindowListener(new WindowAdapter() {
 			public void windowClosing(WindowEvent e) {
+				if (recordPath != null) {
+					try {
+						timeline.save(recordPath);
+					} catch (IOException ex) {
+						ex.printStackTrace();
+					}
+				}
+
 				System.exit(0);
 			}
 		});
@@ -39,15 +108,13 @@ public class Main {
 		Container contentPane = frame.getContentPane();
 
 		contentPane.add(tv);
+		frame.addKeyListener(new Keyboard(latch));
 		frame.setVisible(true);
 
-		if (args.length >= 1) {
-			if (args[0].equals("-d")) {
-				new Debugger(cart, tv).on();
-			} else {
-				System.out.println("Ein?");
-			}
+		if (debug) {
+			new Debugger(cart, tv, standard).on();
 		} else {
+			speaker.start();
 			atari.on();
 		}
 	}
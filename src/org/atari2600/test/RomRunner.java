@@ -0,0 +1,160 @@
+package org.atari2600.test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.atari2600.core.Atari2600;
+import org.atari2600.core.Cartridge;
+import org.atari2600.tv.TVFrame;
+import org.atari2600.tv.TVStandard;
+
+/**
+ * Runs every ROM of a directory headlessly for a number of frames, several
+ * ROMs at once, and writes for each one a screenshot of the last frame
+ * (name.png) and the hash of every frame (name.txt). A summary line with the
+ * timing of each ROM is printed, and the exit status is not zero if any ROM
+ * failed.
+ * 
+ * Usage: RomRunner [-frames N] [-threads N] [-out dir] [-pal|-secam] romdir
+ */
+public class RomRunner {
+	public static void main(String args[]) {
+		TVStandard standard = TVStandard.NTSC;
+		int frames = 600;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File out = new File("out");
+		File dir = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-frames":
+				frames = Integer.parseInt(args[++i]);
+				break;
+
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+
+			case "-out":
+				out = new File(args[++i]);
+				break;
+
+			case "-pal":
+				standard = TVStandard.PAL;
+				break;
+
+			case "-secam":
+				standard = TVStandard.SECAM;
+				break;
+
+			default:
+				dir = new File(args[i]);
+			}
+		}
+
+		if (dir == null || !dir.isDirectory()) {
+			System.out.println("Usage: RomRunner [-frames N] [-threads N] "
+					+ "[-out dir] [-pal|-secam] romdir");
+			System.exit(2);
+		}
+
+		File[] roms = dir.listFiles((d, name) -> name.endsWith(".bin")
+				|| name.endsWith(".a26"));
+
+		Arrays.sort(roms);
+		out.mkdirs();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		long start = System.nanoTime();
+
+		int failed = 0;
+
+		// The pool threads are not daemons: stop them however this ends.
+		try {
+			for (File rom : roms) {
+				final TVStandard std = standard;
+				final int n = frames;
+				final File o = out;
+
+				results.add(pool.submit(() -> run(rom, std, n, o)));
+			}
+
+			for (int i = 0; i < roms.length; i++) {
+				try {
+					System.out.println(results.get(i).get());
+				} catch (ExecutionException e) {
+					failed++;
+					System.out.println(roms[i].getName() + " FAILED "
+							+ e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			pool.shutdownNow();
+		}
+
+		System.out.printf("%d ROMs, %d failed, %.1fs%n", roms.length, failed,
+				(System.nanoTime() - start) / 1e9);
+
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Runs a ROM and writes its screenshot and hashes.
+	 * 
+	 * @return The summary line of the ROM.
+	 */
+	private static String run(File rom, TVStandard standard, int frames,
+			File out) throws IOException {
+		String name = rom.getName().replaceFirst("\\.[^.]*$", "");
+		Atari2600 atari = new Atari2600(new Cartridge(rom.getPath()), null,
+				null, standard);
+		long start = System.nanoTime();
+
+		atari.getCpu().boot();
+
+		try (PrintWriter hashes = new PrintWriter(new File(out, name
+				+ ".txt"))) {
+			for (int i = 0; i < frames; i++) {
+				atari.runFrame(true);
+				hashes.printf("%d %016x%n", i,
+						atari.getCpu().getMemory().getTia().getLastFrame()
+								.hash());
+			}
+		}
+
+		long elapsed = System.nanoTime() - start;
+		TVFrame frame = atari.getCpu().getMemory().getTia().getLastFrame();
+
+		ImageIO.write(toImage(frame), "png", new File(out, name + ".png"));
+
+		return String.format("%s frames=%d hash=%016x %.1fms %.0ffps "
+				+ "%.2fMHz", rom.getName(), frames, frame.hash(),
+				elapsed / 1e6, frames / (elapsed / 1e9), atari.getCycles()
+						/ (elapsed / 1e3));
+	}
+
+	private static BufferedImage toImage(TVFrame frame) {
+		BufferedImage image = new BufferedImage(frame.getWidth(),
+				frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+
+		image.setRGB(0, 0, frame.getWidth(), frame.getHeight(),
+				frame.getPixels(), 0, frame.getWidth());
+
+		return image;
+	}
+}
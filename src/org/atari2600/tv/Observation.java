@@ -0,0 +1,159 @@
+package org.atari2600.tv;
+
+/**
+ * Reduced grayscale picture, as used for training agents. The TIA adds each
+ * scanline to it as soon as the line is finished, so the full color frame
+ * doesn't need to be stored at all.
+ * 
+ * The visible part of the picture (160 pixels wide, a given range of lines)
+ * is split into a grid of width x height cells, and each cell gets the
+ * average luminance of its pixels. Optionally each value is the maximum of
+ * the last two frames, to cancel the flicker of games that draw sprites on
+ * alternate frames.
+ */
+public class Observation {
+	// Visible pixels of a line: the first 68 are horizontal blank.
+	private static final int FIRST_PIXEL = 68;
+	private static final int PIXELS = 160;
+
+	private final int width, height, top, rows;
+	private final boolean maxPool;
+
+	// Cell of each visible pixel and each line of the range (its index in
+	// acc), and number of pixels in each cell.
+	private final int[] colCells, rowCells;
+	private final int[] counts;
+
+	// Luminance added so far this frame, the last frame without pooling, and
+	// the output.
+	private final int[] acc;
+	private final byte[] previous;
+	private final byte[] pixels;
+
+	/**
+	 * @param width
+	 *            : The width of the observation.
+	 * @param height
+	 *            : The height of the observation.
+	 * @param top
+	 *            : The first line of the frame that is used.
+	 * @param rows
+	 *            : The number of lines used.
+	 * @param maxPool
+	 *            : True to take the maximum of the last two frames.
+	 */
+	public Observation(int width, int height, int top, int rows,
+			boolean maxPool) {
+		if (width < 1 || width > PIXELS || height < 1 || height > rows) {
+			throw new IllegalArgumentException("Bad observation size");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.top = top;
+		this.rows = rows;
+		this.maxPool = maxPool;
+
+		colCells = new int[PIXELS];
+		rowCells = new int[rows];
+		counts = new int[width * height];
+		acc = new int[width * height];
+		previous = new byte[width * height];
+		pixels = new byte[width * height];
+
+		for (int x = 0; x < PIXELS; x++) {
+			colCells[x] = x * width / PIXELS;
+		}
+
+		for (int y = 0; y < rows; y++) {
+			rowCells[y] = (y * height / rows) * width;
+		}
+
+		for (int y = 0; y < rows; y++) {
+			for (int x = 0; x < PIXELS; x++) {
+				counts[rowCells[y] + colCells[x]]++;
+			}
+		}
+	}
+
+	/**
+	 * Creates an observation of the usual picture area of a TV standard: 210
+	 * lines for NTSC (as the Arcade Learning Environment), 250 for PAL and
+	 * SECAM.
+	 */
+	public static Observation of(TVStandard standard, int width, int height,
+			boolean maxPool) {
+		if (standard == TVStandard.NTSC) {
+			return new Observation(width, height, 34, 210, maxPool);
+		}
+
+		return new Observation(width, height, 40, 250, maxPool);
+	}
+
+	/**
+	 * Adds a finished scanline.
+	 * 
+	 * @param v
+	 *            : The line of the frame.
+	 * @param line
+	 *            : The pixels of the line.
+	 */
+	public void addLine(int v, Pixel[] line) {
+		int y = v - top;
+
+		if (y < 0 || y >= rows) {
+			return;
+		}
+
+		int row = rowCells[y];
+
+		for (int x = 0; x < PIXELS; x++) {
+			int c = line[FIRST_PIXEL + x].getColor();
+			int luma = (((c >> 16) & 0xFF) * 77 + ((c >> 8) & 0xFF) * 150
+					+ (c & 0xFF) * 29) >> 8;
+
+			acc[row + colCells[x]] += luma;
+		}
+	}
+
+	/**
+	 * Finishes the frame: works out the output and starts a new one.
+	 */
+	public void endFrame() {
+		for (int i = 0; i < acc.length; i++) {
+			int luma = acc[i] / counts[i];
+
+			acc[i] = 0;
+
+			if (maxPool) {
+				pixels[i] = (byte) Math.max(luma, previous[i] & 0xFF);
+				previous[i] = (byte) luma;
+			} else {
+				pixels[i] = (byte) luma;
+			}
+		}
+	}
+
+	// Getters ----------------------------------------------------
+
+	/**
+	 * @return The luminance of each cell (0 to 255, unsigned), row by row.
+	 *         Overwritten by every frame.
+	 */
+	public byte[] getPixels() {
+		return pixels;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public boolean isMaxPool() {
+		return maxPool;
+	}
+
+}
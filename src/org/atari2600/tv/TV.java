@@ -1,7 +1,8 @@
 package org.atari2600.tv;
 
-import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 import javax.swing.JPanel;
 
@@ -11,48 +12,92 @@ public class TV extends JPanel {
 	 */
 	private static final long serialVersionUID = -6538890434231780545L;
 
-	private TVFrame frame;
+	// Triple buffer between the emulation thread and the painting one. Each
+	// new frame is copied into back, which is then swapped with ready; paint
+	// swaps ready with frame when there is a new one and draws frame. So the
+	// frame being painted is never written, nothing is allocated, and neither
+	// thread waits for the other for longer than a swap.
+	private TVFrame back, ready, frame;
+	private boolean fresh;
+	private final Object lock = new Object();
+
+	// The frame's colors are copied here and the image is scaled when drawn.
+	private BufferedImage image;
+	private int[] imagePixels;
 
 	public TV() {
-		frame = new TVFrame();
+		this(TVStandard.NTSC);
+	}
+
+	public TV(TVStandard standard) {
+		back = new TVFrame(standard.getLines());
+		ready = new TVFrame(standard.getLines());
+		frame = new TVFrame(standard.getLines());
 	}
 
 	@Override
 	public void paint(Graphics g) {
-		Pixel pixels[][] = frame.getPixels();
-		int li = pixels.length/* - 68*/; // Remove HBlank
-		int lj = pixels[0].length/* - 70*/; // Remove Vsync, Vblank and Overscan
-		super.paint(g);
+		synchronized (lock) {
+			if (fresh) {
+				TVFrame t = frame;
 
-		for (int i = 0; i < li; i++) {
-			for (int j = 0; j < lj; j++) {
-				g.setColor(new Color(pixels[i/* + 68*/][j/* + 40*/].getColor()));
-				g.fillRect(i * 3, j * 2, 3, 2);
+				frame = ready;
+				ready = t;
+				fresh = false;
 			}
 		}
 
+		int li = frame.getWidth()/* - 68*/; // Remove HBlank
+		int lj = frame.getHeight()/* - 70*/; // Remove Vsync, Vblank and Overscan
+		super.paint(g);
+
+		if (image == null || image.getWidth() != li
+				|| image.getHeight() != lj) {
+			image = new BufferedImage(li, lj, BufferedImage.TYPE_INT_RGB);
+			imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+					.getData();
+		}
+
+		System.arraycopy(frame.getPixels(), 0, imagePixels, 0, li * lj);
+		g.drawImage(image, 0, 0, li * 3, lj * 2, null);
 	}
 
 	/**
 	 * Sets the new frame to paint and calls the repaint method. Must be called
-	 * each time a new frame has to be painted.
+	 * each time a new frame has to be painted. The frame is copied, so the
+	 * caller may draw over it as soon as this returns.
 	 * 
 	 * @param frame
 	 *            : The frame to paint
 	 */
 	public void repaint(TVFrame frame) {
-		this.frame = frame;
+		back.copy(frame);
+
+		synchronized (lock) {
+			TVFrame t = ready;
+
+			ready = back;
+			back = t;
+			fresh = true;
+		}
 
 		// Call JPanel's repaint() to trigger the paint method.
 		repaint();
 	}
 
+	/**
+	 * @return The frame painted last. Only to be used from the painting
+	 *         thread.
+	 */
 	public TVFrame getFrame() {
 		return frame;
 	}
 
 	public void setFrame(TVFrame frame) {
-		this.frame = frame;
+		synchronized (lock) {
+			this.frame = frame;
+			fresh = false;
+		}
 	}
 
 }
@@ -2,47 +2,129 @@ package org.atari2600.tv;
 
 
 /**
- * Class representing the frame to be built. Consists on a matrix of pixels.
+ * Class representing the frame to be built. Consists on a buffer of ARGB
+ * colors, one per color clock of every scanline, stored line after line.
  * 
  * @author Juan Manuel Leflet Estrada
  * 
  */
 public class TVFrame {
-	private Pixel[][] pixels;
+	// Color clocks per scanline.
+	public static final int WIDTH = 228;
+
+	private int[] pixels;
+	private int height;
+
+	// Metadata: number of lines the TIA generated for this frame (may differ
+	// from the height), first line out of VBLANK (-1 if none) and whether the
+	// frame was ended by VSYNC rather than by the line limit.
+	private int lineCount;
+	private int startLine;
+	private boolean vsync;
 
 	public TVFrame() {
-		pixels = new Pixel[228][262];
-		
-		// Fill pixels.
-		for (int i = 0; i < pixels.length; i++) {
-			for (int j = 0; j < pixels[0].length; j++) {
-				pixels[i][j] = new Pixel();
-			}
-		}
+		this(TVStandard.NTSC.getLines());
 	}
 
-	public void setPixel(int x, int y, int c) {
-		pixels[x][y] = new Pixel(c);
+	/**
+	 * @param height
+	 *            : The number of scanlines of the frame.
+	 */
+	public TVFrame(int height) {
+		this.height = height;
+		pixels = new int[WIDTH * height];
+		lineCount = height;
+		startLine = -1;
+		vsync = false;
 	}
-	
-	public void setPixel(int x, int y, Pixel p) {
-		pixels[x][y] = p;
+
+	public void setPixelColor(int x, int y, int c) {
+		pixels[y * WIDTH + x] = c;
 	}
 
-	public Pixel getPixel(int x, int y) {
-		return pixels[x][y];
+	public int getPixelColor(int x, int y) {
+		return pixels[y * WIDTH + x];
 	}
 
-	public void setPixelColor(int x, int y, int c) {
-		pixels[x][y].setColor(c);
+	public int getWidth() {
+		return WIDTH;
 	}
 
-	public int getPixelColor(int x, int y) {
-		return pixels[x][y].getColor();
+	public int getHeight() {
+		return height;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public void setLineCount(int lineCount) {
+		this.lineCount = lineCount;
+	}
+
+	public int getStartLine() {
+		return startLine;
+	}
+
+	public void setStartLine(int startLine) {
+		this.startLine = startLine;
+	}
+
+	public boolean isVsync() {
+		return vsync;
+	}
+
+	public void setVsync(boolean vsync) {
+		this.vsync = vsync;
 	}
 
-	public Pixel[][] getPixels() {
+	/**
+	 * @return The ARGB colors of the frame, line after line.
+	 */
+	public int[] getPixels() {
 		return pixels;
 	}
 
+	/**
+	 * Makes this frame a copy of another one, colors and metadata. The colors
+	 * are copied into this frame's buffer, which is only replaced if the
+	 * heights differ.
+	 * 
+	 * @param src
+	 *            : The frame to copy.
+	 */
+	public void copy(TVFrame src) {
+		if (src.height != height) {
+			height = src.height;
+			pixels = new int[WIDTH * height];
+		}
+
+		System.arraycopy(src.pixels, 0, pixels, 0, pixels.length);
+		lineCount = src.lineCount;
+		startLine = src.startLine;
+		vsync = src.vsync;
+	}
+
+	/**
+	 * Hashes the colors of the frame (64 bit FNV-1a over the RGB of each
+	 * pixel). Equal frames give equal hashes on any machine, so it can be used
+	 * to compare runs.
+	 * 
+	 * @return The hash of the frame.
+	 */
+	public long hash() {
+		long h = 0xCBF29CE484222325L;
+
+		for (int i = 0; i < pixels.length; i++) {
+			int c = pixels[i];
+
+			for (int b = 0; b < 24; b += 8) {
+				h ^= (c >>> b) & 0xFF;
+				h *= 0x100000001B3L;
+			}
+		}
+
+		return h;
+	}
+
 }
@@ -0,0 +1,127 @@
+package org.atari2600.tv;
+
+/**
+ * Enumeration of the TV standards the console was sold for. Each one has its
+ * own number of scanlines, frame rate, color clock and palette. The palettes
+ * are precomputed to ARGB and indexed by the color-luminance registers shifted
+ * right once (the lowest bit is not used).
+ */
+public enum TVStandard {
+	NTSC(262, 59.94, 3579545.0, new int[] { 0x000000, 0x404040, 0x6c6c6c,
+			0x909090, 0xb0b0b0, 0xc8c8c8, 0xdcdcdc, 0xffffff, 0x444400,
+			0x646410, 0x848424, 0xa0a034, 0xb8b840, 0xd0d050, 0xe8e85c,
+			0xfcfc68, 0x702800, 0x844414, 0x985c28, 0xac783c, 0xbc8c4c,
+			0xcca05c, 0xdcb468, 0xecc878, 0x841800, 0x983418, 0xac5030,
+			0xc06848, 0xd0805c, 0xe09470, 0xeca880, 0xfcbc94, 0x880000,
+			0x9c2020, 0xb03c3c, 0xc05858, 0xd07070, 0xe08888, 0xeca0a0,
+			0xfcb4b4, 0x78005c, 0x8c2074, 0xa03c88, 0xb0589c, 0xc070b0,
+			0xd084c0, 0xdc9cd0, 0xecb0e0, 0x480078, 0x602090, 0x783ca4,
+			0x8c58b8, 0xa070cc, 0xb484dc, 0xc49cec, 0xd4b0fc, 0x140084,
+			0x302098, 0x4c3cac, 0x6858c0, 0x7c70d0, 0x9488e0, 0xa8a0ec,
+			0xbcb4fc, 0x000088, 0x1c209c, 0x3840b0, 0x505cc0, 0x6874d0,
+			0x7c8ce0, 0x90a4ec, 0xa4b8fc, 0x00187c, 0x1c3890, 0x3854a8,
+			0x5070bc, 0x6888cc, 0x7c9cdc, 0x90b4ec, 0xa4c8fc, 0x002c5c,
+			0x1c4c78, 0x386890, 0x5084ac, 0x689cc0, 0x7cb4d4, 0x90cce8,
+			0xa4e0fc, 0x003c2c, 0x1c5c48, 0x387c64, 0x509c80, 0x68b494,
+			0x7cd0ac, 0x90e4c0, 0xa4fcd4, 0x003c00, 0x205c20, 0x407c40,
+			0x5c9c5c, 0x74b474, 0x8cd08c, 0xa4e4a4, 0xb8fcb8, 0x143800,
+			0x345c1c, 0x507c38, 0x6c9850, 0x84b468, 0x9ccc7c, 0xb4e490,
+			0xc8fca4, 0x2c3000, 0x4c501c, 0x687034, 0x848c4c, 0x9ca864,
+			0xb4c078, 0xccd488, 0xe0ec9c, 0x442800, 0x644818, 0x846830,
+			0xa08444, 0xb89c58, 0xd0b46c, 0xe8cc7c, 0xfce08c }),
+
+	PAL(312, 50.0, 3546894.0, new int[] { 0x000000, 0x2b2b2b, 0x525252,
+			0x767676, 0x979797, 0xb6b6b6, 0xd2d2d2, 0xececec, 0x000000,
+			0x2b2b2b, 0x525252, 0x767676, 0x979797, 0xb6b6b6, 0xd2d2d2,
+			0xececec, 0x805800, 0x96711a, 0xab8732, 0xbe9c48, 0xcfaf5c,
+			0xdfc06f, 0xeed180, 0xfce090, 0x445c00, 0x5e791a, 0x769332,
+			0x8cac48, 0xa0c25c, 0xb3d76f, 0xc4ea80, 0xd4fc90, 0x703400,
+			0x89511a, 0xa06b32, 0xb68448, 0xc99a5c, 0xdcaf6f, 0xecc280,
+			0xfcd490, 0x006414, 0x1a8035, 0x329852, 0x48b06e, 0x5cc585,
+			0x6fd99b, 0x80ebaf, 0x90fcc2, 0x700014, 0x891a35, 0xa03252,
+			0xb6486e, 0xc95c85, 0xdc6f9b, 0xec80af, 0xfc90c2, 0x005c5c,
+			0x1a7676, 0x328e8e, 0x48a4a4, 0x5cb8b8, 0x6fcbcb, 0x80dcdc,
+			0x90ecec, 0x70005c, 0x841a74, 0x963289, 0xa8489e, 0xb75cb0,
+			0xc66fc1, 0xd380d1, 0xe090e0, 0x003c70, 0x195a89, 0x2f75a0,
+			0x448eb6, 0x57a5c9, 0x68badc, 0x79ceec, 0x88e0fc, 0x580070,
+			0x6e1a89, 0x8332a0, 0x9648b6, 0xa75cc9, 0xb86fdc, 0xc780ec,
+			0xd690fc, 0x002070, 0x193f89, 0x2f5aa0, 0x4474b6, 0x578bc9,
+			0x68a1dc, 0x79b5ec, 0x88c8fc, 0x340080, 0x4a1a96, 0x5f32ab,
+			0x7248be, 0x835ccf, 0x936fdf, 0xa280ee, 0xb090fc, 0x000088,
+			0x1a1a9d, 0x3232b0, 0x4848c2, 0x5c5cd2, 0x6f6fe1, 0x8080ef,
+			0x9090fc, 0x000000, 0x2b2b2b, 0x525252, 0x767676, 0x979797,
+			0xb6b6b6, 0xd2d2d2, 0xececec, 0x000000, 0x2b2b2b, 0x525252,
+			0x767676, 0x979797, 0xb6b6b6, 0xd2d2d2, 0xececec }),
+
+	// SECAM sets only have eight colors, selected by the luminance bits. The
+	// hue bits are ignored.
+	SECAM(312, 50.0, 3546894.0, repeat(new int[] { 0x000000, 0x2121ff,
+			0xf03c79, 0xff50ff, 0x7fff00, 0x7fffff, 0xffff3f, 0xffffff }, 16));
+
+	private final int lines;
+	private final double frameRate;
+	private final double colorClock;
+	private final int[] palette;
+
+	private TVStandard(int lines, double frameRate, double colorClock,
+			int[] rgb) {
+		this.lines = lines;
+		this.frameRate = frameRate;
+		this.colorClock = colorClock;
+
+		// Precompute the opaque ARGB values.
+		palette = new int[rgb.length];
+
+		for (int i = 0; i < rgb.length; i++) {
+			palette[i] = 0xFF000000 | rgb[i];
+		}
+	}
+
+	private static int[] repeat(int[] colors, int times) {
+		int[] res = new int[colors.length * times];
+
+		for (int i = 0; i < res.length; i++) {
+			res[i] = colors[i % colors.length];
+		}
+
+		return res;
+	}
+
+	/**
+	 * @return The number of scanlines of a frame.
+	 */
+	public int getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return The number of frames per second.
+	 */
+	public double getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * @return The TIA color clock frequency, in Hz.
+	 */
+	public double getColorClock() {
+		return colorClock;
+	}
+
+	/**
+	 * @return The TIA audio sample rate: two samples per 228 color clocks
+	 *         scanline.
+	 */
+	public double getAudioRate() {
+		return colorClock / 228 * 2;
+	}
+
+	/**
+	 * @return The 128 ARGB colors, indexed by the color-luminance value
+	 *         shifted right once.
+	 */
+	public int[] getPalette() {
+		return palette;
+	}
+
+}
@@ -116,6 +116,7 @@ public class M {
 	// Important individual bits
 	public static final int VERTICAL_SYNC = BIT_1;
 	public static final int VERTICAL_BLANK = BIT_1;
+	public static final int DUMP_PADDLES = BIT_7;
 
 	// CTRLPF bits
 	public static final int PLAYFIELD_REFLECTION = BIT_0;